@@ -0,0 +1,5 @@
+package com.brogrammer.streamspace.common;
+
+public enum DOWNLOADSTATE {
+    QUEUED, DOWNLOADING, PAUSED, SEEDING
+}
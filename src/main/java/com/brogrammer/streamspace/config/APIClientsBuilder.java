@@ -1,41 +1,110 @@
 package com.brogrammer.streamspace.config;
 
+import com.brogrammer.streamspace.resilience.ResilienceRegistry;
+import com.brogrammer.streamspace.upstream.UpstreamCaches;
+import com.brogrammer.streamspace.upstream.UpstreamHttpMetrics;
+import com.brogrammer.streamspace.upstream.UpstreamInterceptor;
 import com.brogrammer.streamspace.www.APIBayClient;
 import com.brogrammer.streamspace.www.MicrosoftStoreAPI;
 import com.brogrammer.streamspace.www.YTSAPIClient;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
 import org.springframework.web.client.RestClient;
 import org.springframework.web.client.support.RestClientAdapter;
 import org.springframework.web.service.invoker.HttpServiceProxyFactory;
 
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+
+/**
+ * HTTP clients of the upstream APIs.
+ * <p>
+ * All of them share one JDK {@link HttpClient}, which negotiates HTTP/2 and keeps connections alive across
+ * requests. Each upstream gets its own {@link RestClient} on top of it with its own read timeout, circuit breaker
+ * and bulkhead, see {@link UpstreamInterceptor}, so one slow or failing upstream neither holds request threads
+ * nor takes the connections of the others.
+ */
 @Configuration
 public class APIClientsBuilder {
 
     @Bean
-    RestClient restClient() {
-        return RestClient.builder().build();
+    HttpClient upstreamHttpClient(@Value("${upstream.http.connect-timeout-ms:3000}") long connectTimeout) {
+        return httpClient(connectTimeout, HttpClient.Redirect.NORMAL);
     }
 
     @Bean
-    HttpServiceProxyFactory httpServiceProxyFactory(RestClient restClient) {
-        return HttpServiceProxyFactory
-                .builderFor(RestClientAdapter.create(restClient))
-                .build();
+    YTSAPIClient ytsapiClient(HttpClient upstreamHttpClient, UpstreamHttpMetrics metrics, ResilienceRegistry resilience, UpstreamCaches upstreamCaches,
+                              @Value("${upstream.http.yts.read-timeout-ms:5000}") long readTimeout,
+                              @Value("${upstream.http.yts.max-concurrent:8}") int maxConcurrent) {
+        RestClient restClient = restClient("yts", upstreamHttpClient, metrics, resilience, readTimeout, maxConcurrent);
+        // The catalog changes hourly at most, see the @CachedFor of each method
+        return upstreamCaches.wrap(YTSAPIClient.class, proxyFactory(restClient).createClient(YTSAPIClient.class));
     }
 
     @Bean
-    YTSAPIClient ytsapiClient(HttpServiceProxyFactory factory) {
-        return factory.createClient(YTSAPIClient.class);
+    APIBayClient apiBayClient(HttpClient upstreamHttpClient, UpstreamHttpMetrics metrics, ResilienceRegistry resilience, UpstreamCaches upstreamCaches,
+                              @Value("${upstream.http.apibay.read-timeout-ms:8000}") long readTimeout,
+                              @Value("${upstream.http.apibay.max-concurrent:4}") int maxConcurrent) {
+        RestClient restClient = restClient("apibay", upstreamHttpClient, metrics, resilience, readTimeout, maxConcurrent);
+        return upstreamCaches.wrap(APIBayClient.class, proxyFactory(restClient).createClient(APIBayClient.class));
     }
 
     @Bean
-    APIBayClient apiBayClient(HttpServiceProxyFactory factory) {
-        return factory.createClient(APIBayClient.class);
+    MicrosoftStoreAPI microsoftStoreAPI(HttpClient upstreamHttpClient, UpstreamHttpMetrics metrics, ResilienceRegistry resilience, UpstreamCaches upstreamCaches,
+                                        @Value("${upstream.http.microsoft.read-timeout-ms:3000}") long readTimeout,
+                                        @Value("${upstream.http.microsoft.max-concurrent:8}") int maxConcurrent) {
+        RestClient restClient = restClient("microsoft", upstreamHttpClient, metrics, resilience, readTimeout, maxConcurrent);
+        return upstreamCaches.wrap(MicrosoftStoreAPI.class, proxyFactory(restClient).createClient(MicrosoftStoreAPI.class));
     }
 
     @Bean
-    MicrosoftStoreAPI microsoftStoreAPI(HttpServiceProxyFactory factory) {
-        return factory.createClient(MicrosoftStoreAPI.class);
+    RestClient youtubeRestClient(HttpClient upstreamHttpClient, UpstreamHttpMetrics metrics, ResilienceRegistry resilience,
+                                 @Value("${upstream.http.youtube.read-timeout-ms:8000}") long readTimeout,
+                                 @Value("${upstream.http.youtube.max-concurrent:4}") int maxConcurrent) {
+        return restClient("youtube", upstreamHttpClient, metrics, resilience, readTimeout, maxConcurrent);
+    }
+
+    /**
+     * Image URLs come from outside, so redirects are not followed here but checked hop by hop against the
+     * allowed hosts, see {@code ImageProxyController}.
+     */
+    @Bean
+    RestClient imagesRestClient(UpstreamHttpMetrics metrics, ResilienceRegistry resilience,
+                                @Value("${upstream.http.connect-timeout-ms:3000}") long connectTimeout,
+                                @Value("${upstream.http.images.read-timeout-ms:8000}") long readTimeout,
+                                @Value("${upstream.http.images.max-concurrent:8}") int maxConcurrent) {
+        HttpClient httpClient = httpClient(connectTimeout, HttpClient.Redirect.NEVER);
+        return restClient("images", httpClient, metrics, resilience, readTimeout, maxConcurrent);
+    }
+
+    private static HttpClient httpClient(long connectTimeout, HttpClient.Redirect redirect) {
+        return HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(Duration.ofMillis(connectTimeout))
+                .followRedirects(redirect)
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .build();
+    }
+
+    private static RestClient restClient(String name, HttpClient httpClient, UpstreamHttpMetrics metrics,
+                                         ResilienceRegistry resilience, long readTimeout, int maxConcurrent) {
+        JdkClientHttpRequestFactory requestFactory = new JdkClientHttpRequestFactory(httpClient);
+        requestFactory.setReadTimeout(Duration.ofMillis(readTimeout));
+        return RestClient.builder()
+                .requestFactory(requestFactory)
+                .requestInterceptor(new UpstreamInterceptor(
+                        resilience.circuitBreaker(name),
+                        resilience.bulkhead(name, maxConcurrent, Duration.ofMillis(readTimeout)),
+                        metrics))
+                .build();
+    }
+
+    private static HttpServiceProxyFactory proxyFactory(RestClient restClient) {
+        return HttpServiceProxyFactory
+                .builderFor(RestClientAdapter.create(restClient))
+                .build();
     }
 }
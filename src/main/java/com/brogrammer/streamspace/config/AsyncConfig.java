@@ -0,0 +1,25 @@
+package com.brogrammer.streamspace.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+@Configuration
+public class AsyncConfig {
+
+    /**
+     * Small bounded pool for library writes triggered by torrent callbacks.
+     * A full queue rejects the task instead of running it on the caller, so Bt's threads never block on JDBC.
+     */
+    @Bean
+    ThreadPoolTaskExecutor torrentIndexingExecutor(@Value("${torrent.indexing.queue-capacity:256}") int queueCapacity) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(1);
+        executor.setMaxPoolSize(2);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("torrent-indexer-");
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        return executor;
+    }
+}
@@ -29,16 +29,22 @@ public class WebSocketConfig implements WebSocketConfigurer {
                     @Override
                     public boolean beforeHandshake(ServerHttpRequest request, ServerHttpResponse response,
                                                    WebSocketHandler wsHandler, Map<String, Object> attributes) {
-                        // Extract the torrentHash from the request URL
+                        // Extract the optional torrentHash from the request URL, topics are normally subscribed over the socket
                         String query = request.getURI().getQuery();
+                        if (query == null) {
+                            return true;
+                        }
                         Map<String, String> queryPairs = Arrays.stream(query.split("&"))
-                                .map(pair -> pair.split("="))
-                                .collect(Collectors.toMap(pair -> pair[0], pair -> pair[1]));
+                                .map(pair -> pair.split("=", 2))
+                                .filter(pair -> pair.length == 2)
+                                .collect(Collectors.toMap(pair -> pair[0], pair -> pair[1], (first, second) -> first));
 
                         String torrentHash = queryPairs.get("torrentHash");
 
                         // Store the torrentHash in the session attributes
-                        attributes.put("torrentHash", torrentHash);
+                        if (torrentHash != null) {
+                            attributes.put("torrentHash", torrentHash);
+                        }
 
                         return true;
                     }
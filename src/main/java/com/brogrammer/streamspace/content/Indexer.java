@@ -1,13 +1,12 @@
 package com.brogrammer.streamspace.content;
 
-import bt.metainfo.TorrentFile;
-import bt.metainfo.TorrentId;
 import com.brogrammer.streamspace.services.ContentDirectoryServices;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.core.io.FileSystemResource;
 import org.springframework.http.MediaType;
 import org.springframework.http.MediaTypeFactory;
+import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 import org.springframework.web.util.UriUtils;
 
@@ -35,32 +34,85 @@ public class Indexer {
     final VideoRepository videoRepository;
     final MusicRepository musicRepository;
 
-    public void indexMovie(TorrentFile file, String torrentName, String fileName, TorrentId torrentId, String contentMimeType) {
-        log.info("FileName {}", fileName);
-        log.info("TorrentName {}", torrentName);
-        List<Video> videos = videoRepository.findAllByName(fileName);
-        if (!videos.isEmpty()) {
-            videos.forEach(vid -> log.info("Movie Found: {}", vid.getName()));
-            videoRepository.deleteAllByName(fileName);
+    /**
+     * Classifies the files of a freshly fetched torrent and upserts them into the library in one batch.
+     * Runs on the bounded indexing executor so that Bt's threads never wait on JDBC.
+     *
+     * @param contentStore content store prefix of the download's target directory, relative to the user's home
+     */
+    @Async("torrentIndexingExecutor")
+    public void indexTorrent(String torrentHash, String torrentName, String contentStore, List<TorrentFileEntry> files) {
+        String torrentId = torrentHash.toUpperCase();
+        // Bt stores single-file torrents directly in the target directory
+        String torrentRoot = files.size() == 1 ? contentStore : contentStore + torrentName + "/";
+
+        // The largest video is the torrent's main title and keeps the hash as its code for the player links
+        TorrentFileEntry mainVideo = files.stream()
+                .filter(file -> indexerUtils.isVideoFile(file.fileName()))
+                .max(Comparator.comparingLong(TorrentFileEntry::size))
+                .orElse(null);
+
+        List<Video> videos = new ArrayList<>();
+        List<Song> songs = new ArrayList<>();
+        for (TorrentFileEntry file : files) {
+            String fileName = file.fileName();
+            if (indexerUtils.isVideoFile(fileName)) {
+                videos.add(new Video()
+                        .setMovieCode(file == mainVideo ? torrentId : torrentId + "/" + file.path())
+                        .setName(fileName)
+                        .setCreated(LocalDateTime.now())
+                        .setSummary(fileName)
+                        .setContentLength(file.size())
+                        .setContentMimeType(decodeContentType.apply(Paths.get(fileName)))
+                        .setContentId(torrentRoot + file.path())
+                        .setSource(SOURCE.TORRENT));
+            } else if (indexerUtils.isAudioFile(fileName)) {
+                songs.add(new Song()
+                        .setSongId(torrentId + "/" + file.path())
+                        .setName(fileName)
+                        .setSummary(fileName)
+                        .setContentLength(file.size())
+                        .setContentMimeType(decodeContentType.apply(Paths.get(fileName)))
+                        .setContentId(torrentRoot + file.path())
+                        .setSource(SOURCE.TORRENT));
+            }
         }
-        Video video = createVideoEntityTorrentSource(file, torrentName, fileName, torrentId, contentMimeType);
-        log.debug("Content ID {}", contentDirectoryServices.getMoviesContentStore() + torrentName + "/" + fileName);
-        videoRepository.save(video);
+
+        videoRepository.upsertTorrentVideos(videos);
+        musicRepository.upsertTorrentMusic(songs);
+        log.info("Indexed torrent {}: {} videos, {} songs, {} other files", torrentName,
+                videos.size(), songs.size(), files.size() - videos.size() - songs.size());
     }
 
-    public void indexMusic(TorrentFile file, String torrentName, String fileName, TorrentId torrentId) {
-        log.info("FileName {}", fileName);
-        log.info("TorrentName {}", torrentName);
-        Song song = new Song();
-        song.setContentLength(file.getSize());
-        song.setName(fileName);
-        song.setSummary(fileName);
-        song.setContentMimeType(decodeContentType.apply(Paths.get(fileName)));
-        log.info("Content ID for music: {}", contentDirectoryServices.getMusicContentStore() + torrentName + "/" + fileName);
-        song.setContentId(contentDirectoryServices.getMusicContentStore() + torrentName + "/" + fileName);
-        song.setSongId(torrentId.toString().toUpperCase());
-        song.setSource(SOURCE.TORRENT);
-        musicRepository.save(song);
+    /**
+     * Refreshes the library entries of a completed torrent from the files on disk.
+     */
+    @Async("torrentIndexingExecutor")
+    public void finalizeTorrent(String torrentHash) {
+        String torrentId = torrentHash.toUpperCase();
+        Path userHomePath = Paths.get(ContentDirectoryServices.userHomePath);
+
+        List<Video> videos = videoRepository.findAllByMovieCodeOrMovieCodeStartingWith(torrentId, torrentId + "/");
+        videos.forEach(video -> {
+            Path path = userHomePath.resolve(video.getContentId());
+            if (Files.isRegularFile(path)) {
+                video.setContentLength(sizeOf(path, video.getContentLength()))
+                        .setContentMimeType(decodeContentType.apply(path))
+                        .setCreated(LocalDateTime.now());
+            }
+        });
+        List<Song> songs = musicRepository.findAllBySongIdStartingWith(torrentId + "/");
+        songs.forEach(song -> {
+            Path path = userHomePath.resolve(song.getContentId());
+            if (Files.isRegularFile(path)) {
+                song.setContentLength(sizeOf(path, song.getContentLength()))
+                        .setContentMimeType(decodeContentType.apply(path));
+            }
+        });
+
+        videoRepository.saveAll(videos);
+        musicRepository.saveAll(songs);
+        log.info("Finalized {} library entries for torrent {}", videos.size() + songs.size(), torrentId);
     }
 
     public CompletableFuture<Object> indexLocalMedia(Set<String> locations) {
@@ -178,17 +230,11 @@ public class Indexer {
         }).filter(Objects::nonNull).toList();
     }
 
-    private Video createVideoEntityTorrentSource(TorrentFile file, String torrentName,
-                                                 String fileName, TorrentId torrentId,
-                                                 String contentMimeType) {
-        return new Video()
-                .setContentLength(file.getSize())
-                .setName(fileName)
-                .setCreated(LocalDateTime.now())
-                .setSummary(fileName)
-                .setContentMimeType(contentMimeType)
-                .setContentId(contentDirectoryServices.getMoviesContentStore() + torrentName + "/" + fileName)
-                .setMovieCode(torrentId.toString().toUpperCase())
-                .setSource(SOURCE.TORRENT);
+    private static long sizeOf(Path path, long fallback) {
+        try {
+            return Files.size(path);
+        } catch (IOException e) {
+            return fallback;
+        }
     }
 }
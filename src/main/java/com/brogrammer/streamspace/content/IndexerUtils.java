@@ -5,6 +5,7 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import java.util.Arrays;
+import java.util.Set;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -12,24 +13,30 @@ import java.util.stream.Stream;
 @Component
 public class IndexerUtils {
 
-    @Value("${video.file.extensions.streaming}")
-    private String videoFileExtensions;
-    @Value("${audio.file.extensions.streaming}")
-    private String audioFileExtensions;
+    private final String videoFileExtensions;
+    private final String audioFileExtensions;
+    // built once up front, final so every indexing thread sees them complete
+    private final String globPattern;
+    private final Set<String> videoExtensionSet;
+    private final Set<String> audioExtensionSet;
 
-    public static String cachedGlobPattern;
+    public IndexerUtils(@Value("${video.file.extensions.streaming}") String videoFileExtensions,
+                        @Value("${audio.file.extensions.streaming}") String audioFileExtensions) {
+        this.videoFileExtensions = videoFileExtensions;
+        this.audioFileExtensions = audioFileExtensions;
+        String extensions = Stream.concat(
+                        Arrays.stream(videoFileExtensions.split(",")),
+                        Arrays.stream(audioFileExtensions.split(",")))
+                .map(String::trim)
+                .map(ext -> ext.startsWith(".") ? ext.substring(1) : ext)
+                .collect(Collectors.joining(","));
+        this.globPattern = "glob:**/*.{".concat(extensions).concat("}");
+        this.videoExtensionSet = toExtensionSet(videoFileExtensions);
+        this.audioExtensionSet = toExtensionSet(audioFileExtensions);
+    }
 
     public String buildGlobPattern() {
-        if (cachedGlobPattern == null) {
-            String extensions = Stream.concat(
-                            Arrays.stream(videoFileExtensions.split(",")),
-                            Arrays.stream(audioFileExtensions.split(",")))
-                    .map(String::trim)
-                    .map(ext -> ext.startsWith(".") ? ext.substring(1) : ext)
-                    .collect(Collectors.joining(","));
-            cachedGlobPattern = "glob:**/*.{".concat(extensions).concat("}");
-        }
-        return cachedGlobPattern;
+        return globPattern;
     }
 
     public String[] getVideoFileExtensions() {
@@ -39,4 +46,24 @@ public class IndexerUtils {
     public String[] getAudioFileExtensions() {
         return audioFileExtensions.split(",");
     }
+
+    public boolean isVideoFile(String fileName) {
+        return videoExtensionSet.contains(extensionOf(fileName));
+    }
+
+    public boolean isAudioFile(String fileName) {
+        return audioExtensionSet.contains(extensionOf(fileName));
+    }
+
+    private static Set<String> toExtensionSet(String extensions) {
+        return Arrays.stream(extensions.split(","))
+                .map(String::trim)
+                .map(String::toLowerCase)
+                .collect(Collectors.toUnmodifiableSet());
+    }
+
+    private static String extensionOf(String fileName) {
+        int dot = fileName.lastIndexOf('.');
+        return dot < 0 ? "" : fileName.substring(dot).toLowerCase();
+    }
 }
@@ -19,6 +19,10 @@ public interface MusicRepository extends ListCrudRepository<Song, String> {
     @Query("DELETE FROM Song")
     void bulkDeleteAll();
 
+    List<Song> findAllBySongIdStartingWith(String songIdPrefix);
+
+    List<Song> findTop50ByNameContainingIgnoreCase(String name);
+
     // Add to MusicRepository interface
     @Query("SELECT s.contentId FROM Song s")
     List<String> findAllContentIds();
@@ -37,4 +41,13 @@ public interface MusicRepository extends ListCrudRepository<Song, String> {
 
         saveAll(nonExistingSongs);
     }
+
+    @Transactional
+    default void upsertTorrentMusic(List<Song> songs) {
+        if (CollectionUtils.isEmpty(songs)) {
+            return;
+        }
+
+        saveAll(songs);
+    }
 }
@@ -0,0 +1,12 @@
+package com.brogrammer.streamspace.content;
+
+/**
+ * A file of a torrent as handed over by the torrent engine: its path inside the torrent
+ * ({@code /}-separated) and its size in bytes.
+ */
+public record TorrentFileEntry(String path, long size) {
+
+    public String fileName() {
+        return path.substring(path.lastIndexOf('/') + 1);
+    }
+}
@@ -8,15 +8,21 @@ import org.springframework.data.rest.core.annotation.RepositoryRestResource;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.CollectionUtils;
 
+import java.util.Collection;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.stream.Collectors;
 
 @RepositoryRestResource(path="videos", collectionResourceRel="videos")
 public interface VideoRepository extends ListCrudRepository<Video, String> {
 
     List<Video> findAllByName(String name);
 
+    List<Video> findAllByMovieCodeOrMovieCodeStartingWith(String movieCode, String movieCodePrefix);
+
+    List<Video> findTop50ByNameContainingIgnoreCase(String name);
+
     @Modifying
     @Transactional
     @Query("DELETE FROM Video")
@@ -27,6 +33,12 @@ public interface VideoRepository extends ListCrudRepository<Video, String> {
     @Query("DELETE FROM Video v where v.name=:name")
     void deleteAllByName(@Param("name") String name);
 
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM Video v where v.name in :names and v.movieCode not in :movieCodes")
+    void deleteAllByNameExcludingMovieCodes(@Param("names") Collection<String> names,
+                                            @Param("movieCodes") Collection<String> movieCodes);
+
     @Query("SELECT v.contentId FROM Video v")
     List<String> findAllContentIds();
 
@@ -44,4 +56,20 @@ public interface VideoRepository extends ListCrudRepository<Video, String> {
 
         saveAll(nonExistingVideos);
     }
+
+    /**
+     * Inserts or updates the videos of a torrent in one transaction, dropping other entries
+     * with the same file names so that a title is listed once.
+     */
+    @Transactional
+    default void upsertTorrentVideos(List<Video> videos) {
+        if (CollectionUtils.isEmpty(videos)) {
+            return;
+        }
+
+        deleteAllByNameExcludingMovieCodes(
+                videos.stream().map(Video::getName).collect(Collectors.toSet()),
+                videos.stream().map(Video::getMovieCode).collect(Collectors.toSet()));
+        saveAll(videos);
+    }
 }
@@ -0,0 +1,188 @@
+package com.brogrammer.streamspace.downloads;
+
+import com.brogrammer.streamspace.common.CONTENTTYPE;
+import com.brogrammer.streamspace.common.DOWNLOADTYPE;
+import com.brogrammer.streamspace.torrentengine.TorrentDownloadManager;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Pattern;
+
+/**
+ * Adds many torrents at once from uploaded .torrent files and a list of magnet links or infohashes.
+ * <p>
+ * Items are parsed and validated in parallel on virtual threads, deduplicated within the batch and
+ * against existing downloads, and the new tasks are saved in one transaction before their clients start.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class BatchImporter {
+
+    private static final Pattern HEX_HASH = Pattern.compile("[0-9a-fA-F]{40}");
+    private static final Pattern BASE32_HASH = Pattern.compile("[A-Za-z2-7]{32}");
+    private static final String BASE32_ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZ234567";
+
+    final Downloads downloads;
+    final TorrentDownloadManager torrentDownloadManager;
+
+    public List<ImportResult> importAll(List<MultipartFile> torrentFiles, String magnets,
+                                        CONTENTTYPE contentType, DOWNLOADTYPE downloadType) {
+        List<Callable<ImportResult>> parsers = new ArrayList<>();
+        if (torrentFiles != null) {
+            torrentFiles.stream()
+                    .filter(file -> !file.isEmpty())
+                    .forEach(file -> parsers.add(() -> parseTorrentFile(file)));
+        }
+        if (magnets != null) {
+            magnets.lines()
+                    .map(String::trim)
+                    .filter(line -> !line.isEmpty() && !line.startsWith("#"))
+                    .forEach(line -> parsers.add(() -> parseMagnet(line)));
+        }
+
+        List<ImportResult> parsed = parseInParallel(parsers);
+
+        // first occurrence wins, later ones are reported as duplicates of the batch
+        Map<String, ImportResult> unique = new LinkedHashMap<>();
+        List<ImportResult> results = new ArrayList<>(parsed.size());
+        for (ImportResult result : parsed) {
+            if (result.status() != ImportResult.Status.ADDED) {
+                results.add(result);
+            } else if (unique.putIfAbsent(result.torrentHash(), result) != null) {
+                results.add(result.withStatus(ImportResult.Status.DUPLICATE, "Listed more than once"));
+            } else {
+                results.add(result);
+            }
+        }
+
+        Set<String> existing = new HashSet<>();
+        downloads.findAllById(unique.keySet()).forEach(task -> existing.add(task.getTorrentHash()));
+
+        List<DownloadTask> tasks = new ArrayList<>();
+        Map<String, Integer> positions = new HashMap<>();
+        for (int i = 0; i < results.size(); i++) {
+            ImportResult result = results.get(i);
+            if (result.status() != ImportResult.Status.ADDED || unique.get(result.torrentHash()) != result) {
+                continue;
+            }
+            if (existing.contains(result.torrentHash())) {
+                results.set(i, result.withStatus(ImportResult.Status.DUPLICATE, "Already downloading"));
+                continue;
+            }
+            DownloadTask task = new DownloadTask(result.torrentHash(), result.name(), result.torrentHash(), contentType);
+            task.setDownloadType(downloadType);
+            task.setMetaInfoFile(result.metaInfoFile());
+            tasks.add(task);
+            positions.put(result.torrentHash(), i);
+        }
+
+        Map<String, String> failures = torrentDownloadManager.startDownloads(tasks);
+        failures.forEach((torrentHash, message) -> {
+            int i = positions.get(torrentHash);
+            results.set(i, results.get(i).withStatus(ImportResult.Status.FAILED, message));
+        });
+        log.info("Batch import: {} items, {} added, {} failed", results.size(), tasks.size() - failures.size(), failures.size());
+        return results;
+    }
+
+    private ImportResult parseTorrentFile(MultipartFile torrentFile) {
+        String fileName = torrentFile.getOriginalFilename();
+        if (fileName == null || !fileName.endsWith(".torrent")) {
+            return ImportResult.invalid(fileName, "Not a .torrent file");
+        }
+        try {
+            TorrentDownloadManager.StoredMetainfo metainfo = torrentDownloadManager.storeMetainfo(torrentFile);
+            String name = fileName.substring(0, fileName.lastIndexOf('.'));
+            return ImportResult.added(fileName, metainfo.torrentHash(), name, metainfo.file());
+        } catch (Exception e) {
+            log.warn("Invalid torrent file {} in batch: {}", fileName, e.getMessage());
+            return ImportResult.invalid(fileName, e.getMessage());
+        }
+    }
+
+    private static ImportResult parseMagnet(String line) {
+        String hash = line;
+        String name = null;
+        if (line.regionMatches(true, 0, "magnet:?", 0, 8)) {
+            hash = null;
+            for (String parameter : line.substring(8).split("&")) {
+                int separator = parameter.indexOf('=');
+                if (separator < 0) {
+                    continue;
+                }
+                String key = parameter.substring(0, separator);
+                String value = URLDecoder.decode(parameter.substring(separator + 1), StandardCharsets.UTF_8);
+                if (key.equals("xt") && value.regionMatches(true, 0, "urn:btih:", 0, 9)) {
+                    hash = value.substring(9);
+                } else if (key.equals("dn")) {
+                    name = value;
+                }
+            }
+            if (hash == null) {
+                return ImportResult.invalid(line, "Magnet link has no BitTorrent infohash");
+            }
+        }
+
+        String torrentHash;
+        if (HEX_HASH.matcher(hash).matches()) {
+            torrentHash = hash.toUpperCase(Locale.ROOT);
+        } else if (BASE32_HASH.matcher(hash).matches()) {
+            torrentHash = HexFormat.of().withUpperCase().formatHex(decodeBase32(hash.toUpperCase(Locale.ROOT)));
+        } else {
+            return ImportResult.invalid(line, "Not a magnet link or infohash");
+        }
+        return ImportResult.added(line, torrentHash, name != null ? name : torrentHash, null);
+    }
+
+    private static byte[] decodeBase32(String value) {
+        byte[] bytes = new byte[value.length() * 5 / 8];
+        int buffer = 0;
+        int bits = 0;
+        int index = 0;
+        for (char c : value.toCharArray()) {
+            buffer = (buffer << 5) | BASE32_ALPHABET.indexOf(c);
+            bits += 5;
+            if (bits >= 8) {
+                bytes[index++] = (byte) (buffer >> (bits - 8));
+                bits -= 8;
+            }
+        }
+        return bytes;
+    }
+
+    private static List<ImportResult> parseInParallel(List<Callable<ImportResult>> parsers) {
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<ImportResult>> futures = executor.invokeAll(parsers);
+            List<ImportResult> results = new ArrayList<>(futures.size());
+            for (Future<ImportResult> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Batch import interrupted", e);
+        } catch (ExecutionException e) {
+            // parsers report their own failures, anything else is a bug
+            throw new IllegalStateException("Batch import failed", e.getCause());
+        }
+    }
+}
@@ -1,11 +1,13 @@
 package com.brogrammer.streamspace.downloads;
 
 import com.brogrammer.streamspace.common.CONTENTTYPE;
+import com.brogrammer.streamspace.common.DOWNLOADSTATE;
 import com.brogrammer.streamspace.common.DOWNLOADTYPE;
 import jakarta.persistence.*;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
+import org.hibernate.annotations.ColumnDefault;
 import org.springframework.data.annotation.CreatedDate;
 
 import java.io.File;
@@ -23,10 +25,17 @@ public class DownloadTask {
     private String torrentName;
     private String movieCode;
     private double progress = 0;
+    @ColumnDefault("0")
+    private long bytesDownloaded = 0;
+    @Enumerated(EnumType.STRING)
+    private DOWNLOADSTATE state = DOWNLOADSTATE.DOWNLOADING;
     @Enumerated(EnumType.STRING)
     private CONTENTTYPE mediaType;
     @Enumerated(EnumType.STRING)
     private DOWNLOADTYPE downloadType;
+    // per-torrent seeding targets, null to use the global ones
+    private Double seedRatio;
+    private Integer seedMinutes;
     @CreatedDate
     private LocalDateTime createdDate;
 
@@ -1,9 +1,41 @@
 package com.brogrammer.streamspace.downloads;
 
+import com.brogrammer.streamspace.common.DOWNLOADSTATE;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.ListCrudRepository;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Map;
 
 @Repository
 public interface Downloads extends ListCrudRepository<DownloadTask, String> {
-}
 
+    @Modifying
+    @Query("UPDATE DownloadTask t SET t.progress=:progress, t.bytesDownloaded=:bytesDownloaded where t.torrentHash=:torrentHash")
+    void updateProgress(@Param("torrentHash") String torrentHash,
+                        @Param("progress") double progress,
+                        @Param("bytesDownloaded") long bytesDownloaded);
+
+    @Modifying
+    @Query("UPDATE DownloadTask t SET t.state=:state where t.torrentHash=:torrentHash")
+    void updateState(@Param("torrentHash") String torrentHash, @Param("state") DOWNLOADSTATE state);
+
+    /**
+     * Applies buffered progress of many torrents in one transaction. Updates of tasks that were
+     * deleted in the meantime (completed or cancelled) simply match no row.
+     */
+    @Transactional
+    default void applyProgress(Map<String, ProgressUpdate> updates) {
+        updates.forEach((torrentHash, update) -> {
+            if (update.progress() != null) {
+                updateProgress(torrentHash, update.progress(), update.bytesDownloaded());
+            }
+            if (update.state() != null) {
+                updateState(torrentHash, update.state());
+            }
+        });
+    }
+}
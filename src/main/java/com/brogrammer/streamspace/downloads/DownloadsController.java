@@ -2,6 +2,9 @@ package com.brogrammer.streamspace.downloads;
 
 import com.brogrammer.streamspace.common.CONTENTTYPE;
 import com.brogrammer.streamspace.common.DOWNLOADTYPE;
+import com.brogrammer.streamspace.torrentengine.PeerBlocklist;
+import com.brogrammer.streamspace.torrentengine.SwarmTelemetry;
+import com.brogrammer.streamspace.torrentengine.TelemetrySeries;
 import com.brogrammer.streamspace.torrentengine.TorrentDownloadManager;
 import io.github.wimdeblauwe.htmx.spring.boot.mvc.HxRequest;
 import lombok.RequiredArgsConstructor;
@@ -15,6 +18,7 @@ import org.springframework.web.multipart.MultipartFile;
 
 import java.io.File;
 import java.util.List;
+import java.util.Map;
 
 @Slf4j
 @Controller
@@ -24,6 +28,9 @@ public class DownloadsController {
 
     final Downloads downloads;
     final TorrentDownloadManager torrentDownloadManager;
+    final SwarmTelemetry swarmTelemetry;
+    final BatchImporter batchImporter;
+    final PeerBlocklist peerBlocklist;
 
     @GetMapping("")
     String getAllDownloads(Model model) {
@@ -45,6 +52,18 @@ public class DownloadsController {
         //return "<span class=\"badge text-bg-secondary\">"+ downloadTaskRepository.count() +"</span>";
     }
 
+    @ResponseBody
+    @GetMapping(value = "/{hashString}/telemetry", produces = MediaType.APPLICATION_JSON_VALUE)
+    ResponseEntity<TelemetrySeries.View> telemetry(@PathVariable("hashString") String torrentHash) {
+        return ResponseEntity.of(swarmTelemetry.view(torrentHash));
+    }
+
+    @ResponseBody
+    @GetMapping(value = "/blocklist", produces = MediaType.APPLICATION_JSON_VALUE)
+    Map<String, Object> blocklist() {
+        return Map.of("ranges", peerBlocklist.size(), "blockedConnections", peerBlocklist.blockedConnections());
+    }
+
     @GetMapping("/form")
     String downloadForm() {
         return "downloads :: downloadTorrent";
@@ -103,11 +122,10 @@ public class DownloadsController {
                 throw new IllegalArgumentException("Invalid torrent file");
             }
 
-            // Extract torrent hash from the file using proper Bencode parsing
-            String torrentHash = torrentDownloadManager.extractTorrentHash(torrentFile.getBytes());
-
-            // Convert MultipartFile to File for storage
-            File metaInfoFile = torrentDownloadManager.convertMultipartFileToFile(torrentFile.getBytes(), fileName);
+            // Written once into the metainfo store and hashed from there, the upload is never copied on the heap
+            TorrentDownloadManager.StoredMetainfo metainfo = torrentDownloadManager.storeMetainfo(torrentFile);
+            String torrentHash = metainfo.torrentHash();
+            File metaInfoFile = metainfo.file();
 
             // Create a download task with proper initialization
             String torrentName = fileName.substring(0, fileName.lastIndexOf('.'));
@@ -130,12 +148,32 @@ public class DownloadsController {
         }
     }
 
+    @HxRequest
+    @PostMapping("/torrent/batch")
+    String downloadTorrents(@RequestParam(value = "torrentFiles", required = false) List<MultipartFile> torrentFiles,
+                            @RequestParam(value = "magnets", required = false) String magnets,
+                            @RequestParam(value = "contentType", defaultValue = "VIDEO") CONTENTTYPE contentType,
+                            @RequestParam(value = "sequentialCheck", required = false) String sequentialCheck,
+                            Model model) {
+        DOWNLOADTYPE downloadType = "on".equals(sequentialCheck) ? DOWNLOADTYPE.SEQUENTIAL : DOWNLOADTYPE.RANDOMIZED;
+        model.addAttribute("results", batchImporter.importAll(torrentFiles, magnets, contentType, downloadType));
+        return "downloads :: batchImportResult";
+    }
+
     @PostMapping("/pause/{hashString}")
     ResponseEntity<String> pauseDownload(@PathVariable("hashString") String pauseHash) {
         torrentDownloadManager.pauseDownload(pauseHash);
         return ResponseEntity.ok("<i hx-post=/download/torrent/" + pauseHash+ " class=\"bi bi-arrow-clockwise\" hx-target=\"#download-container\" hx-swap=\"outerHTML\"></i>");
     }
 
+    @PostMapping("/{hashString}/seeding")
+    ResponseEntity<Void> seedingTargets(@PathVariable("hashString") String torrentHash,
+                                        @RequestParam(value = "ratio", required = false) Double ratio,
+                                        @RequestParam(value = "minutes", required = false) Integer minutes) {
+        torrentDownloadManager.setSeedingTargets(torrentHash, ratio, minutes);
+        return ResponseEntity.noContent().build();
+    }
+
     @HxRequest
     @DeleteMapping("/{hashString}")
     ResponseEntity<String> cancelDownload(@PathVariable("hashString") String cancelHash) {
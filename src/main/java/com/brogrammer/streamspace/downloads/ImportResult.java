@@ -0,0 +1,26 @@
+package com.brogrammer.streamspace.downloads;
+
+import java.io.File;
+
+/**
+ * Outcome of one item of a batch import. {@code source} is the file name or the line it came from.
+ */
+public record ImportResult(String source, String torrentHash, String name, File metaInfoFile,
+                           Status status, String message) {
+
+    public enum Status {
+        ADDED, DUPLICATE, INVALID, FAILED
+    }
+
+    static ImportResult added(String source, String torrentHash, String name, File metaInfoFile) {
+        return new ImportResult(source, torrentHash, name, metaInfoFile, Status.ADDED, null);
+    }
+
+    static ImportResult invalid(String source, String message) {
+        return new ImportResult(source, null, null, null, Status.INVALID, message);
+    }
+
+    ImportResult withStatus(Status status, String message) {
+        return new ImportResult(source, torrentHash, name, metaInfoFile, status, message);
+    }
+}
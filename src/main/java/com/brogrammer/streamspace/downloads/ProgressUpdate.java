@@ -0,0 +1,15 @@
+package com.brogrammer.streamspace.downloads;
+
+import com.brogrammer.streamspace.common.DOWNLOADSTATE;
+
+/**
+ * Pending change of a download task, null fields are left as they are.
+ */
+public record ProgressUpdate(Double progress, long bytesDownloaded, DOWNLOADSTATE state) {
+
+    ProgressUpdate mergeWith(ProgressUpdate newer) {
+        return newer.progress != null
+                ? new ProgressUpdate(newer.progress, newer.bytesDownloaded, newer.state != null ? newer.state : state)
+                : new ProgressUpdate(progress, bytesDownloaded, newer.state != null ? newer.state : state);
+    }
+}
@@ -0,0 +1,65 @@
+package com.brogrammer.streamspace.downloads;
+
+import com.brogrammer.streamspace.common.DOWNLOADSTATE;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Write-behind buffer for download progress.
+ * <p>
+ * Session ticks only overwrite the latest value per torrent in memory; the buffer is flushed in a single
+ * transaction at a fixed interval and on shutdown, so the database sees at most one write per torrent
+ * per interval however often the engine reports.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ProgressWriteBehind {
+
+    private final Map<String, ProgressUpdate> pending = new ConcurrentHashMap<>();
+    final Downloads downloads;
+
+    public void progress(String torrentHash, double progress, long bytesDownloaded) {
+        pending.merge(torrentHash, new ProgressUpdate(progress, bytesDownloaded, null), ProgressUpdate::mergeWith);
+    }
+
+    public void state(String torrentHash, DOWNLOADSTATE state) {
+        pending.merge(torrentHash, new ProgressUpdate(null, 0, state), ProgressUpdate::mergeWith);
+    }
+
+    /**
+     * Drops buffered updates of a task that is about to be deleted.
+     */
+    public void discard(String torrentHash) {
+        pending.remove(torrentHash);
+    }
+
+    @PreDestroy
+    @Scheduled(fixedDelayString = "${downloads.progress.flush-interval-ms:10000}")
+    public void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        Map<String, ProgressUpdate> batch = new HashMap<>();
+        // remove(key, value) keeps updates that arrive while draining for the next flush
+        pending.forEach((torrentHash, update) -> {
+            if (pending.remove(torrentHash, update)) {
+                batch.put(torrentHash, update);
+            }
+        });
+        try {
+            downloads.applyProgress(batch);
+            log.debug("Flushed progress of {} downloads", batch.size());
+        } catch (Exception e) {
+            log.warn("Failed to flush progress of {} downloads", batch.size(), e);
+            batch.forEach((torrentHash, update) -> pending.merge(torrentHash, update, (newer, older) -> older.mergeWith(newer)));
+        }
+    }
+}
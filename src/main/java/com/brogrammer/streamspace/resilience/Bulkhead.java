@@ -0,0 +1,59 @@
+package com.brogrammer.streamspace.resilience;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Caps the concurrent calls to one upstream, so a slow upstream holds at most that many threads and
+ * connections. A caller waits for a slot at most {@code maxWait} and is then rejected.
+ */
+public class Bulkhead {
+
+    private final String name;
+    private final int maxConcurrent;
+    private final Semaphore slots;
+    private final Duration maxWait;
+    private final LongAdder rejected = new LongAdder();
+
+    public Bulkhead(String name, int maxConcurrent, Duration maxWait) {
+        this.name = name;
+        this.maxConcurrent = maxConcurrent;
+        this.slots = new Semaphore(maxConcurrent);
+        this.maxWait = maxWait;
+    }
+
+    /**
+     * Takes a slot, which must be given back with {@link #release()}.
+     *
+     * @throws CallNotPermittedException if no slot frees up within the wait
+     */
+    public void acquire() {
+        boolean acquired;
+        try {
+            acquired = slots.tryAcquire(maxWait.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            acquired = false;
+        }
+        if (!acquired) {
+            rejected.increment();
+            throw new CallNotPermittedException("Too many concurrent calls to " + name);
+        }
+    }
+
+    public void release() {
+        slots.release();
+    }
+
+    Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("inUse", maxConcurrent - slots.availablePermits());
+        stats.put("maxConcurrent", maxConcurrent);
+        stats.put("rejected", rejected.sum());
+        return stats;
+    }
+}
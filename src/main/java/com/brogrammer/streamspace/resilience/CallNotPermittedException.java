@@ -0,0 +1,12 @@
+package com.brogrammer.streamspace.resilience;
+
+/**
+ * A call rejected without being made, because the circuit of its upstream is open or its bulkhead is full.
+ * Never retried.
+ */
+public class CallNotPermittedException extends RuntimeException {
+
+    public CallNotPermittedException(String message) {
+        super(message);
+    }
+}
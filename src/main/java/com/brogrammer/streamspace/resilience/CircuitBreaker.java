@@ -0,0 +1,126 @@
+package com.brogrammer.streamspace.resilience;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Stops calling an upstream that keeps failing.
+ * <p>
+ * After {@code failureThreshold} consecutive failures the circuit opens and calls fail fast with
+ * {@link CallNotPermittedException} for {@code openDuration}. Then a single trial call is let through
+ * (half-open): its success closes the circuit, its failure opens it again. Outcomes of calls that were let
+ * through before the circuit opened are ignored until then, only the trial decides.
+ */
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private enum Permission {
+        DENIED, CALL, TRIAL
+    }
+
+    private final String name;
+    private final int failureThreshold;
+    private final long openNanos;
+    private final LongAdder rejected = new LongAdder();
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+    private boolean trialInFlight;
+
+    public CircuitBreaker(String name, int failureThreshold, Duration openDuration) {
+        this.name = name;
+        this.failureThreshold = failureThreshold;
+        this.openNanos = openDuration.toNanos();
+    }
+
+    /**
+     * Claims permission for one call, which must then be reported with {@link #onSuccess(boolean)} or
+     * {@link #onFailure(boolean)}, passing on what this returned.
+     *
+     * @return whether the call is the half-open trial
+     * @throws CallNotPermittedException while the circuit is open
+     */
+    public boolean acquirePermission() {
+        Permission permission = tryAcquirePermission();
+        if (permission == Permission.DENIED) {
+            rejected.increment();
+            throw new CallNotPermittedException("Circuit of " + name + " is open");
+        }
+        return permission == Permission.TRIAL;
+    }
+
+    private synchronized Permission tryAcquirePermission() {
+        switch (state) {
+            case CLOSED -> {
+                return Permission.CALL;
+            }
+            case OPEN -> {
+                if (System.nanoTime() - openedAt < openNanos) {
+                    return Permission.DENIED;
+                }
+                state = State.HALF_OPEN;
+                trialInFlight = true;
+                return Permission.TRIAL;
+            }
+            default -> {
+                // half-open: one trial at a time
+                if (trialInFlight) {
+                    return Permission.DENIED;
+                }
+                trialInFlight = true;
+                return Permission.TRIAL;
+            }
+        }
+    }
+
+    public synchronized void onSuccess(boolean trial) {
+        if (trial) {
+            trialInFlight = false;
+            state = State.CLOSED;
+            consecutiveFailures = 0;
+        } else if (state == State.CLOSED) {
+            consecutiveFailures = 0;
+        }
+    }
+
+    public synchronized void onFailure(boolean trial) {
+        if (trial) {
+            trialInFlight = false;
+            open();
+        } else if (state == State.CLOSED && ++consecutiveFailures >= failureThreshold) {
+            open();
+        }
+    }
+
+    /**
+     * Gives back a permission whose call was never made, e.g. because its bulkhead was full.
+     * A released trial lets the next call be the trial.
+     */
+    public synchronized void releasePermission(boolean trial) {
+        if (trial) {
+            trialInFlight = false;
+        }
+    }
+
+    private void open() {
+        state = State.OPEN;
+        openedAt = System.nanoTime();
+    }
+
+    public synchronized State state() {
+        return state;
+    }
+
+    synchronized Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("state", state);
+        stats.put("consecutiveFailures", consecutiveFailures);
+        stats.put("rejected", rejected.sum());
+        return stats;
+    }
+}
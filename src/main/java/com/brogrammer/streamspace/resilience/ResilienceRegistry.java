@@ -0,0 +1,47 @@
+package com.brogrammer.streamspace.resilience;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The {@link CircuitBreaker} and {@link Bulkhead} of each upstream, by name.
+ */
+@Component
+public class ResilienceRegistry {
+
+    private final int failureThreshold;
+    private final Duration openDuration;
+    private final Map<String, CircuitBreaker> circuitBreakers = new ConcurrentHashMap<>();
+    private final Map<String, Bulkhead> bulkheads = new ConcurrentHashMap<>();
+
+    public ResilienceRegistry(@Value("${resilience.circuit.failure-threshold:5}") int failureThreshold,
+                              @Value("${resilience.circuit.open-duration-ms:30000}") long openDuration) {
+        this.failureThreshold = failureThreshold;
+        this.openDuration = Duration.ofMillis(openDuration);
+    }
+
+    public CircuitBreaker circuitBreaker(String name) {
+        return circuitBreakers.computeIfAbsent(name, key -> new CircuitBreaker(key, failureThreshold, openDuration));
+    }
+
+    /**
+     * The bulkhead of the name, created with the given limits on first use.
+     */
+    public Bulkhead bulkhead(String name, int maxConcurrent, Duration maxWait) {
+        return bulkheads.computeIfAbsent(name, key -> new Bulkhead(key, maxConcurrent, maxWait));
+    }
+
+    public Map<String, Map<String, Object>> stats() {
+        Map<String, Map<String, Object>> stats = new LinkedHashMap<>();
+        circuitBreakers.forEach((name, circuitBreaker) -> stats.computeIfAbsent(name, key -> new LinkedHashMap<>())
+                .put("circuit", circuitBreaker.stats()));
+        bulkheads.forEach((name, bulkhead) -> stats.computeIfAbsent(name, key -> new LinkedHashMap<>())
+                .put("bulkhead", bulkhead.stats()));
+        return stats;
+    }
+}
@@ -0,0 +1,29 @@
+package com.brogrammer.streamspace.resilience;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * How often and how far apart a call is retried.
+ * <p>
+ * Backoff grows exponentially from {@code initialBackoff} up to {@code maxBackoff} and each wait is drawn
+ * uniformly below it ("full jitter"), so clients that failed together do not retry in lockstep.
+ */
+public record RetryPolicy(int maxAttempts, Duration initialBackoff, Duration maxBackoff) {
+
+    public RetryPolicy {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("maxAttempts must be at least 1");
+        }
+    }
+
+    /**
+     * @param attempt the attempt that just failed, starting at 1
+     */
+    Duration backoff(int attempt) {
+        long cap = maxBackoff.toMillis();
+        long exponential = initialBackoff.toMillis() << Math.min(attempt - 1, 20);
+        long bound = Math.max(1, Math.min(cap, exponential));
+        return Duration.ofMillis(ThreadLocalRandom.current().nextLong(bound + 1));
+    }
+}
@@ -1,57 +1,145 @@
 package com.brogrammer.streamspace.resilience;
 
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
 import org.springframework.stereotype.Service;
+import org.springframework.web.client.RestClientResponseException;
 
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 
+/**
+ * Retries failed calls with exponential backoff and jitter, see {@link RetryPolicy}.
+ * <p>
+ * The attempt count lives in each call, so one instance serves all callers. A call rejected by a circuit
+ * breaker or bulkhead is not retried, its upstream is known to be unavailable, nor is one answered with a 4xx
+ * other than 408 and 429, the same request would fail again. A {@code Retry-After} of the response is waited
+ * for, and the call is given up if it asks for longer than the maximum backoff. When all attempts fail the
+ * last exception is thrown.
+ */
 @Slf4j
 @Service
-public class RetryService<T> {
+public class RetryService {
 
-    //@Value("${retryAttempts}")
-    private int retryAttempts = 4;
-    //@Value("${timeToWait}")
-    private final long timeToWait = TimeUnit.SECONDS.toMillis(1);
+    private final RetryPolicy defaultPolicy;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
 
-    public T retry(RetryExecutor<T> retryExecutor) {
+    public RetryService(@Value("${resilience.retry.max-attempts:3}") int maxAttempts,
+                        @Value("${resilience.retry.initial-backoff-ms:200}") long initialBackoff,
+                        @Value("${resilience.retry.max-backoff-ms:2000}") long maxBackoff) {
+        this.defaultPolicy = new RetryPolicy(maxAttempts, Duration.ofMillis(initialBackoff), Duration.ofMillis(maxBackoff));
+    }
+
+    public <T> T retry(RetryExecutor<T> call) throws Exception {
+        return retry(defaultPolicy, call);
+    }
 
-        while (shouldRetry()) {
+    public <T> T retry(RetryPolicy policy, RetryExecutor<T> call) throws Exception {
+        for (int attempt = 1; ; attempt++) {
             try {
-                //log.info("Retrying...");
-                T result = retryExecutor.run();
-                if (result!=null) {
-                    return result;
-                }
-                //return; // if successful, exit method
+                return call.run();
             } catch (Exception e) {
-                retryAttempts--;
-                if (shouldRetry()) {
-                    //log.error(e.getMessage(), e);
-                    log.error(e.getMessage());
-                    waitBeforeNextRetry();
-                } else {
-                    //throw e; // if all retries failed, throw the exception
-                    log.error(e.getMessage(), e);
+                Duration backoff = backoff(policy, attempt, e);
+                if (backoff == null) {
+                    throw e;
                 }
+                log.debug("Attempt {} failed: {}, retrying in {} ms", attempt, e.toString(), backoff.toMillis());
+                Thread.sleep(backoff);
             }
         }
+    }
 
-        return null; // if all retries failed
+    /**
+     * Runs the call and its retries on virtual threads. No thread is held while backing off,
+     * the next attempt is scheduled after the delay.
+     */
+    public <T> CompletableFuture<T> retryAsync(RetryExecutor<T> call) {
+        return retryAsync(defaultPolicy, call);
     }
 
-    private boolean shouldRetry() {
-        return retryAttempts > 0;
+    public <T> CompletableFuture<T> retryAsync(RetryPolicy policy, RetryExecutor<T> call) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        executor.execute(() -> attempt(policy, call, 1, result));
+        return result;
     }
 
-    private void waitBeforeNextRetry() {
+    private <T> void attempt(RetryPolicy policy, RetryExecutor<T> call, int attempt, CompletableFuture<T> result) {
+        if (result.isDone()) {
+            // cancelled by the caller
+            return;
+        }
         try {
-            log.info("Waiting before next retry...");
-            Thread.sleep(timeToWait);
+            result.complete(call.run());
         } catch (Exception e) {
-            log.error("Exception while waiting for next retry {}", e.getMessage(), e);
-            Thread.currentThread().interrupt();
+            Duration backoff = backoff(policy, attempt, e);
+            if (backoff == null) {
+                result.completeExceptionally(e);
+                return;
+            }
+            log.debug("Attempt {} failed: {}, retrying in {} ms", attempt, e.toString(), backoff.toMillis());
+            CompletableFuture.delayedExecutor(backoff.toMillis(), TimeUnit.MILLISECONDS, executor)
+                    .execute(() -> attempt(policy, call, attempt + 1, result));
+        }
+    }
+
+    /**
+     * How long to wait before the next attempt, or null if the call is not retried.
+     */
+    static Duration backoff(RetryPolicy policy, int attempt, Exception e) {
+        if (attempt >= policy.maxAttempts() || e instanceof CallNotPermittedException || e instanceof InterruptedException) {
+            return null;
+        }
+        Duration backoff = policy.backoff(attempt);
+        if (!(e instanceof RestClientResponseException response)) {
+            return backoff;
         }
+        int status = response.getStatusCode().value();
+        if (response.getStatusCode().is4xxClientError() && status != 408 && status != 429) {
+            return null;
+        }
+        Duration retryAfter = retryAfter(response.getResponseHeaders());
+        if (retryAfter == null) {
+            return backoff;
+        }
+        if (retryAfter.compareTo(policy.maxBackoff()) > 0) {
+            // asked to come back later than any caller is willing to wait
+            return null;
+        }
+        return retryAfter.compareTo(backoff) > 0 ? retryAfter : backoff;
     }
 
+    /**
+     * The {@code Retry-After} header in seconds or as an HTTP date, null if there is none or it is malformed.
+     */
+    static Duration retryAfter(HttpHeaders headers) {
+        String value = headers == null ? null : headers.getFirst(HttpHeaders.RETRY_AFTER);
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        try {
+            return Duration.ofSeconds(Math.max(0, Long.parseLong(value.trim())));
+        } catch (NumberFormatException e) {
+            // not seconds, so a date
+        }
+        try {
+            Duration until = Duration.between(Instant.now(), ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME));
+            return until.isNegative() ? Duration.ZERO : until;
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
 }
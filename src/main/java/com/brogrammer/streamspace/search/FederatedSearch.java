@@ -0,0 +1,237 @@
+package com.brogrammer.streamspace.search;
+
+import com.brogrammer.streamspace.content.MusicRepository;
+import com.brogrammer.streamspace.content.Song;
+import com.brogrammer.streamspace.content.Video;
+import com.brogrammer.streamspace.content.VideoRepository;
+import com.brogrammer.streamspace.search.SearchHit.Kind;
+import com.brogrammer.streamspace.www.APIBayClient;
+import com.brogrammer.streamspace.www.YTSAPIClient;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Searches YTS, the APIBay movie, TV and music categories and the local library at once.
+ * <p>
+ * Every source runs on its own virtual thread with its own timeout. Whenever one answers, fails or times out,
+ * the listener gets the results merged so far, so a page shows the fast sources without waiting for the slow
+ * ones. A search that nobody listens to any more is cancelled, which interrupts the sources still running.
+ * Hits of the same title are merged into the best scored one: local files over YTS over torrents, then
+ * by how well the title matches the term and by popularity.
+ */
+@Slf4j
+@Service
+public class FederatedSearch {
+
+    private static final Pattern NON_ALPHANUMERIC = Pattern.compile("[^\\p{L}\\p{N}]+");
+    // a release name up to its year, "the matrix 1999 1080p bluray" -> "the matrix 1999"
+    private static final Pattern UP_TO_YEAR = Pattern.compile("^(.*?\\b(?:19|20)\\d{2})\\b");
+    private static final String NO_TORRENTS_ID = "0";
+
+    private final List<Source> sources;
+    private final int maxResults;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    public FederatedSearch(YTSAPIClient ytsapiClient,
+                           APIBayClient apiBayClient,
+                           VideoRepository videoRepository,
+                           MusicRepository musicRepository,
+                           @Value("${search.source.yts.timeout-ms:4000}") long ytsTimeout,
+                           @Value("${search.source.apibay.timeout-ms:6000}") long apiBayTimeout,
+                           @Value("${search.source.local.timeout-ms:2000}") long localTimeout,
+                           @Value("${search.max-results:40}") int maxResults) {
+        this.maxResults = maxResults;
+        this.sources = List.of(
+                new Source("YTS", ytsTimeout, term -> yts(ytsapiClient.ytsSearchV2(term), term)),
+                new Source("APIBay movies", apiBayTimeout, term -> torrents(apiBayClient.getHDMovies(term), Kind.TORRENT_VIDEO, term)),
+                new Source("APIBay TV", apiBayTimeout, term -> torrents(apiBayClient.getHDTVShows(term), Kind.TORRENT_VIDEO, term)),
+                new Source("APIBay music", apiBayTimeout, term -> torrents(apiBayClient.searchMusic(term), Kind.TORRENT_AUDIO, term)),
+                new Source("Library", localTimeout, term -> local(videoRepository, musicRepository, term)));
+    }
+
+    /**
+     * Starts the search and returns. The listener is called once per source, never concurrently,
+     * the last call has no pending sources. After a cancel it is not called any more.
+     *
+     * @return cancels the sources that have not answered yet
+     */
+    public Runnable search(String term, Consumer<SearchResults> listener) {
+        Map<String, SearchHit> best = new HashMap<>();
+        Set<String> pending = new LinkedHashSet<>(sources.stream().map(Source::name).toList());
+        List<Runnable> cancels = new ArrayList<>(sources.size());
+        for (Source source : sources) {
+            CompletableFuture<List<SearchHit>> result = new CompletableFuture<>();
+            Future<?> task = executor.submit(() -> {
+                try {
+                    result.complete(source.search().apply(term));
+                } catch (RuntimeException e) {
+                    result.completeExceptionally(e);
+                }
+            });
+            cancels.add(() -> {
+                // only sources that have not answered, the last answer may be cancelling from its own thread
+                if (result.cancel(false)) {
+                    task.cancel(true);
+                }
+            });
+            result.orTimeout(source.timeoutMillis(), TimeUnit.MILLISECONDS)
+                    .whenComplete((hits, error) -> {
+                        if (error instanceof TimeoutException) {
+                            task.cancel(true);
+                        } else if (error instanceof CancellationException) {
+                            return;
+                        }
+                        // under the lock, so the listener sees the merges in order and the complete one last
+                        synchronized (best) {
+                            if (error != null) {
+                                log.debug("Search source {} failed for '{}': {}", source.name(), term, error.toString());
+                            } else {
+                                hits.forEach(hit -> best.merge(hit.key(), hit, (a, b) -> a.score() >= b.score() ? a : b));
+                            }
+                            pending.remove(source.name());
+                            listener.accept(new SearchResults(ranked(best), List.copyOf(pending)));
+                        }
+                    });
+        }
+        return () -> cancels.forEach(Runnable::run);
+    }
+
+    private List<SearchHit> ranked(Map<String, SearchHit> best) {
+        return best.values().stream()
+                .sorted(Comparator.comparingDouble(SearchHit::score).reversed())
+                .limit(maxResults)
+                .toList();
+    }
+
+    private static List<SearchHit> yts(YTSAPIClient.YTSMoviesRecord response, String term) {
+        if (response == null || response.data() == null || response.data().movies() == null) {
+            return List.of();
+        }
+        String normalizedTerm = normalize(term);
+        return response.data().movies().stream()
+                .map(movie -> {
+                    String genres = movie.genres() == null ? "" : String.join(" ", movie.genres());
+                    double rating = parseDouble(movie.rating());
+                    String detail = rating > 0 ? genres + " · ★ " + movie.rating() : genres;
+                    return hit(Kind.YTS_MOVIE, "YTS", movie.id(), movie.title_long(), detail, normalizedTerm, 2 + rating / 10);
+                })
+                .toList();
+    }
+
+    private static List<SearchHit> torrents(APIBayClient.APIBayTorrent[] torrents, Kind kind, String term) {
+        if (torrents == null) {
+            return List.of();
+        }
+        String normalizedTerm = normalize(term);
+        return Arrays.stream(torrents)
+                // APIBay answers a single placeholder when nothing matches
+                .filter(torrent -> torrent.info_hash() != null && !NO_TORRENTS_ID.equals(torrent.id()))
+                .map(torrent -> {
+                    long seeders = (long) parseDouble(torrent.seeders());
+                    String detail = humanSize((long) parseDouble(torrent.size())) + " · " + seeders + " seeders";
+                    double popularity = Math.min(1, Math.log10(seeders + 1) / 4);
+                    return hit(kind, "APIBay", torrent.info_hash(), torrent.name(), detail, normalizedTerm, 1 + popularity);
+                })
+                .toList();
+    }
+
+    private static List<SearchHit> local(VideoRepository videoRepository, MusicRepository musicRepository, String term) {
+        String normalizedTerm = normalize(term);
+        // the name is matched by its longest word, file names rarely contain the term as typed
+        String word = Arrays.stream(normalizedTerm.split(" ")).max(Comparator.comparingInt(String::length)).orElse("");
+        if (word.isEmpty()) {
+            return List.of();
+        }
+        List<SearchHit> hits = new ArrayList<>();
+        for (Video video : videoRepository.findTop50ByNameContainingIgnoreCase(word)) {
+            hits.add(hit(Kind.LOCAL_VIDEO, "Library", video.getMovieCode(), video.getName(), "On this device", normalizedTerm, 3));
+        }
+        for (Song song : musicRepository.findTop50ByNameContainingIgnoreCase(word)) {
+            hits.add(hit(Kind.LOCAL_AUDIO, "Library", song.getName(), song.getName(), "On this device", normalizedTerm, 3));
+        }
+        // the repositories matched one word only, keep the names with at least half of the words
+        return hits.stream().filter(hit -> hit.score() - 3 >= 5).toList();
+    }
+
+    /**
+     * Scores a hit by its source boost plus up to 10 for the share of term words in the title and 2 for a title
+     * that is exactly the term.
+     */
+    private static SearchHit hit(Kind kind, String source, String id, String title, String detail, String normalizedTerm, double boost) {
+        String normalizedTitle = normalize(title == null ? "" : title);
+        String key = (kind == Kind.TORRENT_AUDIO || kind == Kind.LOCAL_AUDIO ? "audio:" : "video:") + titleKey(normalizedTitle);
+        return new SearchHit(kind, source, id, title, detail, key, boost + relevance(normalizedTerm, normalizedTitle));
+    }
+
+    private static double relevance(String normalizedTerm, String normalizedTitle) {
+        if (normalizedTerm.isEmpty()) {
+            return 0;
+        }
+        Set<String> titleWords = new HashSet<>(Arrays.asList(normalizedTitle.split(" ")));
+        String[] termWords = normalizedTerm.split(" ");
+        long matched = Arrays.stream(termWords).filter(titleWords::contains).count();
+        double exact = normalizedTitle.equals(normalizedTerm) || titleKey(normalizedTitle).equals(normalizedTerm) ? 2 : 0;
+        return 10.0 * matched / termWords.length + exact;
+    }
+
+    private static String titleKey(String normalizedTitle) {
+        Matcher matcher = UP_TO_YEAR.matcher(normalizedTitle);
+        return matcher.find() ? matcher.group(1) : normalizedTitle;
+    }
+
+    private static String normalize(String text) {
+        String folded = Normalizer.normalize(text, Normalizer.Form.NFKC).toLowerCase(Locale.ROOT);
+        return NON_ALPHANUMERIC.matcher(folded).replaceAll(" ").trim();
+    }
+
+    private static double parseDouble(String value) {
+        try {
+            return value == null ? 0 : Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static String humanSize(long bytes) {
+        if (bytes < 1024 * 1024) {
+            return (bytes >> 10) + " KB";
+        }
+        if (bytes < 1024L * 1024 * 1024) {
+            return (bytes >> 20) + " MB";
+        }
+        return String.format("%.1f GB", bytes / (1024.0 * 1024 * 1024));
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private record Source(String name, long timeoutMillis, Function<String, List<SearchHit>> search) {
+    }
+}
@@ -0,0 +1,15 @@
+package com.brogrammer.streamspace.search;
+
+/**
+ * One result of a federated search.
+ *
+ * @param id    what the action of the kind needs: the YTS movie id, the torrent infohash or the local file name
+ * @param key   results with the same key are the same title, only the best scored one is shown
+ * @param score higher ranks first
+ */
+public record SearchHit(Kind kind, String source, String id, String title, String detail, String key, double score) {
+
+    public enum Kind {
+        YTS_MOVIE, TORRENT_VIDEO, TORRENT_AUDIO, LOCAL_VIDEO, LOCAL_AUDIO
+    }
+}
@@ -0,0 +1,15 @@
+package com.brogrammer.streamspace.search;
+
+import java.util.List;
+
+/**
+ * The merged results of the sources answered so far.
+ *
+ * @param pending the sources still being waited for
+ */
+public record SearchResults(List<SearchHit> hits, List<String> pending) {
+
+    public boolean complete() {
+        return pending.isEmpty();
+    }
+}
@@ -21,9 +21,14 @@ public class BackgroundServices {
     final Indexer indexer;
     final TorrentDownloadManager torrentDownloadManager;
     final UserPreferences userPreferences;
+    final CatalogWarmup catalogWarmup;
+    final ConJob conJob;
 
     @EventListener(ApplicationReadyEvent.class)
     public void onApplicationReadyEvent() {
+        // Fill the upstream caches before the first visitor, without holding up startup
+        conJob.submit(catalogWarmup::warmUp);
+
         log.info("Indexing Local Media");
 
         // Check if user preferences need to be configured
@@ -0,0 +1,76 @@
+package com.brogrammer.streamspace.services;
+
+import com.brogrammer.streamspace.www.APIBayClient;
+import com.brogrammer.streamspace.www.MicrosoftStoreAPI;
+import com.brogrammer.streamspace.www.MicrosoftStoreController;
+import com.brogrammer.streamspace.www.YTSAPIClient;
+import com.brogrammer.streamspace.www.YTSMoviesController;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Prefetches the browse content of the home, movies and music pages into the upstream response caches,
+ * once when the application is ready and then periodically, so visitors are served from the cache.
+ * <p>
+ * The category pages and the featured carousel are called the way their controllers call them, so the
+ * arguments the caches are keyed by cannot drift apart.
+ * Calling a cached method whose response is stale only triggers a background refresh, so a warm-up
+ * never waits on an upstream that already has a cached response.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class CatalogWarmup {
+
+    final YTSAPIClient ytsapiClient;
+    final APIBayClient apiBayClient;
+    final MicrosoftStoreAPI microsoftStoreAPI;
+    final ConJob conJob;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    @Value("${catalog.warmup.enabled:true}")
+    boolean enabled;
+    @Value("${catalog.warmup.timeout-ms:30000}")
+    long timeoutMillis;
+
+    @Scheduled(initialDelayString = "${catalog.warmup.interval-ms:1800000}", fixedDelayString = "${catalog.warmup.interval-ms:1800000}")
+    public void warmUp() {
+        if (!enabled || !running.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            List<Callable<Object>> calls = new ArrayList<>(List.<Callable<Object>>of(
+                    // movies page rows
+                    ytsapiClient::getMostWatchedMovies,
+                    ytsapiClient::getLatestMovies,
+                    ytsapiClient::getLatestComedyMovies,
+                    ytsapiClient::getMustWatch,
+                    ytsapiClient::getIMDBHighestRated,
+                    ytsapiClient::getMostLiked,
+                    // music page
+                    apiBayClient::getLosslessFLACAudio));
+            // first page of each view-all category
+            YTSMoviesController.categories(ytsapiClient).values().forEach(category -> calls.add(() -> category.apply(1)));
+            // featured carousel
+            MicrosoftStoreController.featuredCalls(microsoftStoreAPI).forEach(call -> calls.add(call::call));
+
+            long start = System.nanoTime();
+            List<Optional<Object>> results = conJob.executeAll(calls, Duration.ofMillis(timeoutMillis));
+            long warmed = results.stream().filter(Optional::isPresent).count();
+            log.info("Warmed {} of {} catalog rows in {} ms", warmed, calls.size(), Duration.ofNanos(System.nanoTime() - start).toMillis());
+        } finally {
+            running.set(false);
+        }
+    }
+}
@@ -1,41 +1,70 @@
-/*package com.akshathsaipittala.streamspace.services;
+package com.brogrammer.streamspace.services;
 
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
 import java.util.List;
+import java.util.Optional;
 import java.util.concurrent.Callable;
-import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
-import java.util.concurrent.StructuredTaskScope;
-import java.util.function.Supplier;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Runs independent upstream calls concurrently, one virtual thread each.
+ * <p>
+ * All calls share one deadline, so a fan-out takes about as long as its slowest call and never longer than
+ * the timeout. A call that fails or misses the deadline is cancelled and yields an empty result while the
+ * others are still returned, so a page can render what it got.
+ * ({@code StructuredTaskScope} would scope this more tightly but is still a preview API.)
+ */
+@Slf4j
 @Service
 public class ConJob {
 
-    public <T> List<Future<T>> executeAll(List<Callable<T>> tasks)
-            throws InterruptedException {
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
 
-        try (var scope = new StructuredTaskScope.ShutdownOnFailure()) {
-            List<? extends Supplier<Future<T>>> futures = tasks.stream()
-                    .map(ConJob::asFuture)
-                    .map(scope::fork)
-                    .toList();
-            scope.join();
-            return futures.stream().map(Supplier::get).toList();
+    /**
+     * @return the result of each task in task order, empty where the task failed or timed out
+     */
+    public <T> List<Optional<T>> executeAll(List<Callable<T>> tasks, Duration timeout) {
+        List<Future<T>> futures;
+        try {
+            // cancels whatever has not completed by the deadline
+            futures = executor.invokeAll(tasks, timeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return tasks.stream().map(task -> Optional.<T>empty()).toList();
         }
-
+        return futures.stream().map(ConJob::outcome).toList();
     }
 
-    static <T> Callable<Future<T>> asFuture(Callable<T> task) {
+    /**
+     * Starts a task that nobody waits for, e.g. warming a cache.
+     */
+    public void submit(Runnable task) {
+        executor.execute(task);
+    }
 
-        return () -> {
-            try {
-                return CompletableFuture.completedFuture(task.call());
-            } catch (Exception ex) {
-                return CompletableFuture.failedFuture(ex);
+    static <T> Optional<T> outcome(Future<T> future) {
+        return switch (future.state()) {
+            case SUCCESS -> Optional.ofNullable(future.resultNow());
+            case FAILED -> {
+                log.warn("Concurrent call failed: {}", future.exceptionNow().toString());
+                yield Optional.empty();
+            }
+            default -> {
+                log.warn("Concurrent call timed out");
+                yield Optional.empty();
             }
         };
-
     }
 
-}*/
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+}
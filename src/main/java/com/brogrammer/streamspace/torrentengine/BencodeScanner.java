@@ -0,0 +1,141 @@
+package com.brogrammer.streamspace.torrentengine;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * Single-pass bencode scanner that locates values without decoding them.
+ * <p>
+ * The infohash is the SHA-1 of the {@code info} dictionary exactly as it appears in the file, so
+ * instead of decoding the metainfo and encoding the dictionary again (which changes the bytes of
+ * non-canonical torrents) the scanner skips over the top-level values and hashes the raw span in place.
+ * Nothing is copied, which keeps multi-megabyte torrents with thousands of files cheap.
+ */
+final class BencodeScanner {
+
+    private static final byte[] INFO_KEY = "info".getBytes(StandardCharsets.US_ASCII);
+    private static final HexFormat HEX = HexFormat.of().withUpperCase();
+
+    private BencodeScanner() {
+    }
+
+    /**
+     * Upper-case hex infohash of a metainfo file, the same format as {@code TorrentId.toString().toUpperCase()}.
+     */
+    static String infoHash(ByteBuffer metainfo) {
+        ByteBuffer info = infoDictionary(metainfo);
+        try {
+            MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
+            sha1.update(info);
+            return HEX.formatHex(sha1.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Slice of the buffer holding the raw {@code info} dictionary of a metainfo file.
+     *
+     * @throws IllegalArgumentException if the buffer is not a bencoded dictionary with an info dictionary
+     */
+    static ByteBuffer infoDictionary(ByteBuffer metainfo) {
+        ByteBuffer buffer = metainfo.duplicate();
+        int position = buffer.position();
+        int limit = buffer.limit();
+        if (position >= limit || buffer.get(position) != 'd') {
+            throw new IllegalArgumentException("Invalid torrent file: not a bencoded dictionary");
+        }
+        position++;
+        while (position < limit && buffer.get(position) != 'e') {
+            int keyStart = position;
+            int keyEnd = skip(buffer, position, limit, 0);
+            int valueEnd = skip(buffer, keyEnd, limit, 0);
+            if (isInfoKey(buffer, keyStart, keyEnd)) {
+                if (buffer.get(keyEnd) != 'd') {
+                    throw new IllegalArgumentException("Invalid torrent file: info is not a dictionary");
+                }
+                return buffer.slice(keyEnd, valueEnd - keyEnd);
+            }
+            position = valueEnd;
+        }
+        throw new IllegalArgumentException("Invalid torrent file: no info dictionary found");
+    }
+
+    /**
+     * Returns the position right after the value starting at {@code position}.
+     */
+    private static int skip(ByteBuffer buffer, int position, int limit, int depth) {
+        if (position >= limit) {
+            throw truncated();
+        }
+        if (depth > 64) {
+            throw new IllegalArgumentException("Invalid torrent file: nesting too deep");
+        }
+        byte type = buffer.get(position);
+        switch (type) {
+            case 'i' -> {
+                int end = indexOf(buffer, (byte) 'e', position + 1, limit);
+                return end + 1;
+            }
+            case 'l', 'd' -> {
+                position++;
+                while (position < limit && buffer.get(position) != 'e') {
+                    position = skip(buffer, position, limit, depth + 1);
+                }
+                if (position >= limit) {
+                    throw truncated();
+                }
+                return position + 1;
+            }
+            default -> {
+                if (type < '0' || type > '9') {
+                    throw new IllegalArgumentException("Invalid torrent file: unexpected byte at " + position);
+                }
+                int colon = indexOf(buffer, (byte) ':', position, limit);
+                long length = 0;
+                for (int i = position; i < colon; i++) {
+                    byte digit = buffer.get(i);
+                    if (digit < '0' || digit > '9' || length > Integer.MAX_VALUE) {
+                        throw new IllegalArgumentException("Invalid torrent file: bad string length at " + position);
+                    }
+                    length = length * 10 + (digit - '0');
+                }
+                long end = colon + 1 + length;
+                if (end > limit) {
+                    throw truncated();
+                }
+                return (int) end;
+            }
+        }
+    }
+
+    private static boolean isInfoKey(ByteBuffer buffer, int keyStart, int keyEnd) {
+        // "4:info"
+        int dataStart = keyEnd - INFO_KEY.length;
+        if (dataStart - keyStart != 2 || buffer.get(keyStart) != '4') {
+            return false;
+        }
+        for (int i = 0; i < INFO_KEY.length; i++) {
+            if (buffer.get(dataStart + i) != INFO_KEY[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int indexOf(ByteBuffer buffer, byte value, int from, int limit) {
+        for (int i = from; i < limit; i++) {
+            if (buffer.get(i) == value) {
+                return i;
+            }
+        }
+        throw truncated();
+    }
+
+    private static IllegalArgumentException truncated() {
+        return new IllegalArgumentException("Invalid torrent file: truncated");
+    }
+}
@@ -0,0 +1,115 @@
+package com.brogrammer.streamspace.torrentengine;
+
+import bt.net.InetPeerAddress;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Remembers known-good DHT contacts across restarts.
+ * <p>
+ * mldht's routing table is not reachable through Bt's DHT service, so the nodes are taken from DHT traffic
+ * instead: every peer that announces its DHT port with a PORT message (BEP 5) is recorded with that port,
+ * see {@link DhtPortConsumer}. They are handed to every new {@code DHTModule} as bootstrap nodes next to
+ * the public routers.
+ * The set is snapshotted to disk periodically and on shutdown and reloaded on start.
+ */
+@Slf4j
+@Component
+public class DhtNodeCache {
+
+    private final Path snapshotFile;
+    private final int maxNodes;
+    private final Map<String, InetPeerAddress> nodes;
+    private volatile boolean dirty;
+
+    public DhtNodeCache(@Value("${torrent.dht.nodes-file}") String snapshotFile,
+                        @Value("${torrent.dht.max-cached-nodes:512}") int maxNodes) {
+        this.snapshotFile = Paths.get(snapshotFile);
+        this.maxNodes = maxNodes;
+        // access-ordered so that the least recently seen contact is evicted first
+        this.nodes = new LinkedHashMap<>(maxNodes, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, InetPeerAddress> eldest) {
+                return size() > DhtNodeCache.this.maxNodes;
+            }
+        };
+        load();
+    }
+
+    public synchronized List<InetPeerAddress> bootstrapNodes() {
+        return new ArrayList<>(nodes.values());
+    }
+
+    /**
+     * Records a DHT node, the address of a peer with the DHT port it announced.
+     */
+    public void record(InetAddress address, int port) {
+        // a loopback node is a local DHT node that announced itself, it is as reachable as any other
+        if (port <= 0 || port > 65535 || address.isAnyLocalAddress()) {
+            return;
+        }
+        String host = address.getHostAddress();
+        synchronized (this) {
+            nodes.put(host + ":" + port, new InetPeerAddress(host, port));
+        }
+        dirty = true;
+    }
+
+    @PreDestroy
+    @Scheduled(fixedDelayString = "${torrent.dht.snapshot-interval-ms:300000}")
+    public void snapshot() {
+        if (!dirty) {
+            return;
+        }
+        List<String> lines;
+        synchronized (this) {
+            lines = new ArrayList<>(nodes.keySet());
+            dirty = false;
+        }
+        try {
+            Files.createDirectories(snapshotFile.toAbsolutePath().getParent());
+            Path staging = snapshotFile.resolveSibling(snapshotFile.getFileName() + ".tmp");
+            Files.write(staging, lines, StandardCharsets.US_ASCII);
+            Files.move(staging, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            log.debug("Saved {} DHT nodes to {}", lines.size(), snapshotFile);
+        } catch (IOException e) {
+            dirty = true;
+            log.warn("Failed to save DHT nodes to {}", snapshotFile, e);
+        }
+    }
+
+    private void load() {
+        if (!Files.isRegularFile(snapshotFile)) {
+            return;
+        }
+        try {
+            for (String line : Files.readAllLines(snapshotFile, StandardCharsets.US_ASCII)) {
+                int separator = line.lastIndexOf(':');
+                if (separator <= 0) {
+                    continue;
+                }
+                String host = line.substring(0, separator);
+                int port = Integer.parseInt(line.substring(separator + 1).trim());
+                nodes.put(host + ":" + port, new InetPeerAddress(host, port));
+            }
+            log.info("Loaded {} DHT nodes from {}", nodes.size(), snapshotFile);
+        } catch (IOException | NumberFormatException e) {
+            log.warn("Ignoring unreadable DHT node snapshot {}", snapshotFile, e);
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.brogrammer.streamspace.torrentengine;
+
+import bt.protocol.Port;
+import bt.torrent.annotation.Consumes;
+import bt.torrent.messaging.MessageContext;
+import lombok.RequiredArgsConstructor;
+
+import java.net.InetAddress;
+
+/**
+ * Records the DHT node of every peer that sends a PORT message, its address with the announced DHT port.
+ * <p>
+ * Registered as a Bt messaging agent next to the one of the DHT module, which pings the same node.
+ * Blocked peers can send their PORT message before their connection is dropped, they are skipped.
+ */
+@RequiredArgsConstructor
+class DhtPortConsumer {
+
+    private final DhtNodeCache dhtNodeCache;
+    private final PeerBlocklist peerBlocklist;
+
+    @Consumes
+    public void consume(Port port, MessageContext context) {
+        InetAddress address = context.getPeer().getInetAddress();
+        if (!peerBlocklist.isBlocked(address)) {
+            dhtNodeCache.record(address, port.getPort());
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package com.brogrammer.streamspace.torrentengine;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Admission control of downloads against free disk space.
+ * <p>
+ * When a torrent's metadata arrives, the bytes it still has to write are reserved against the usable space
+ * of the file store holding its target directory. Reservations of other in-flight downloads on the same
+ * store count as used, and they shrink as pieces are written. A torrent that does not fit is either queued
+ * until space frees up or refused, depending on {@code torrent.disk.when-full}.
+ */
+@Slf4j
+@Component
+public class DiskSpaceAdmission {
+
+    enum Decision {
+        ADMITTED, QUEUED, REFUSED
+    }
+
+    private final long headroomBytes;
+    private final boolean queueWhenFull;
+    private final Map<String, Reservation> reservations = new LinkedHashMap<>();
+    // insertion-ordered, the longest waiting torrent is admitted first
+    private final Map<String, Reservation> queued = new LinkedHashMap<>();
+
+    public DiskSpaceAdmission(@Value("${torrent.disk.headroom-mb:512}") long headroomMegabytes,
+                              @Value("${torrent.disk.when-full:queue}") String whenFull) {
+        this.headroomBytes = headroomMegabytes * 1024 * 1024;
+        this.queueWhenFull = !"refuse".equalsIgnoreCase(whenFull);
+    }
+
+    /**
+     * Reserves the bytes a torrent still needs on the store of its target directory.
+     * Calling it again for a torrent that already holds a reservation just refreshes it.
+     */
+    synchronized Decision admit(String torrentHash, Path targetDirectory, long size, long bytesDownloaded) {
+        String key = key(torrentHash);
+        FileStore store;
+        try {
+            store = fileStoreOf(targetDirectory);
+        } catch (IOException e) {
+            // an unknown store cannot be accounted for, do not block the download on it
+            log.warn("Cannot determine file store of {}, admitting {} without a reservation", targetDirectory, torrentHash, e);
+            return Decision.ADMITTED;
+        }
+
+        Reservation reservation = new Reservation(store, size, Math.max(0, size - bytesDownloaded));
+        reservations.remove(key);
+        if (fits(reservation)) {
+            queued.remove(key);
+            reservations.put(key, reservation);
+            return Decision.ADMITTED;
+        }
+        if (queueWhenFull) {
+            queued.put(key, reservation);
+            log.warn("Not enough space on {} for {} ({} MB), queued", store, torrentHash, reservation.remaining >> 20);
+            return Decision.QUEUED;
+        }
+        log.warn("Not enough space on {} for {} ({} MB), refused", store, torrentHash, reservation.remaining >> 20);
+        return Decision.REFUSED;
+    }
+
+    /**
+     * Admits queued torrents that fit now, oldest first, and returns their hashes.
+     */
+    synchronized List<String> admitQueued() {
+        List<String> admitted = new ArrayList<>();
+        for (Map.Entry<String, Reservation> entry : queued.entrySet()) {
+            // each admission counts against the ones after it
+            if (fits(entry.getValue())) {
+                reservations.put(entry.getKey(), entry.getValue());
+                admitted.add(entry.getKey());
+            }
+        }
+        admitted.forEach(queued::remove);
+        return admitted;
+    }
+
+    /**
+     * Shrinks a reservation as data is written, the written bytes already show up as used space.
+     */
+    synchronized void progress(String torrentHash, long bytesDownloaded) {
+        Reservation reservation = reservations.get(key(torrentHash));
+        if (reservation != null) {
+            reservation.remaining = Math.max(0, reservation.size - bytesDownloaded);
+        }
+    }
+
+    synchronized boolean isQueued(String torrentHash) {
+        return queued.containsKey(key(torrentHash));
+    }
+
+    synchronized void release(String torrentHash) {
+        reservations.remove(key(torrentHash));
+        queued.remove(key(torrentHash));
+    }
+
+    private boolean fits(Reservation candidate) {
+        try {
+            long reservedOnStore = reservations.values().stream()
+                    .filter(reservation -> reservation.store.equals(candidate.store))
+                    .mapToLong(reservation -> reservation.remaining)
+                    .sum();
+            return candidate.store.getUsableSpace() - reservedOnStore - headroomBytes >= candidate.remaining;
+        } catch (IOException e) {
+            log.warn("Cannot read usable space of {}", candidate.store, e);
+            return true;
+        }
+    }
+
+    private static FileStore fileStoreOf(Path directory) throws IOException {
+        // the target may not exist yet, use the closest existing ancestor
+        Path existing = directory.toAbsolutePath();
+        while (existing != null && !Files.exists(existing)) {
+            existing = existing.getParent();
+        }
+        if (existing == null) {
+            throw new IOException("No existing ancestor of " + directory);
+        }
+        return Files.getFileStore(existing);
+    }
+
+    private static String key(String torrentHash) {
+        return torrentHash.toUpperCase(Locale.ROOT);
+    }
+
+    private static final class Reservation {
+
+        private final FileStore store;
+        private final long size;
+        private long remaining;
+
+        private Reservation(FileStore store, long size, long remaining) {
+            this.store = store;
+            this.size = size;
+            this.remaining = remaining;
+        }
+    }
+}
@@ -1,86 +1,310 @@
 package com.brogrammer.streamspace.torrentengine;
 
-import lombok.Getter;
-import lombok.Setter;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Lazy;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 import org.springframework.web.socket.CloseStatus;
 import org.springframework.web.socket.TextMessage;
 import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator;
 import org.springframework.web.socket.handler.TextWebSocketHandler;
 
 import java.io.IOException;
+import java.util.HashMap;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+/**
+ * Pushes download progress to the browsers over WebSocket.
+ * <p>
+ * A browser keeps one connection and subscribes to topics on it by sending {@code subscribe <topic>} or
+ * {@code unsubscribe <topic>}, where a topic is a torrent hash or {@value #ALL} for every download. Any number
+ * of sessions may subscribe to the same topic. Two indexes, topic to sessions and session to topics, keep
+ * subscribing, unsubscribing and closing independent of the number of sessions, and fan-out only visits the
+ * subscribers of a torrent.
+ * <p>
+ * Torrent callbacks only publish their latest state, which replaces any state not sent yet. A scheduled
+ * broadcaster encodes each pending state once and sends every session one batch per tick, a JSON array of
+ * frames. Each session drains its own queue on a virtual thread, one batch at a time, so batches arrive in
+ * tick order and neither a torrent's Bt thread nor the other sessions ever wait for a slow browser. Sessions are wrapped in a {@link ConcurrentWebSocketSessionDecorator} with a
+ * send time limit and a bounded buffer that drops the oldest batches when a consumer falls behind.
+ * <p>
+ * Frames are compact JSON deltas (see {@link ProgressFrameEncoder}) rendered by the page. Keyframes with all
+ * fields go out on subscription and every few frames, so a dropped delta is corrected soon after.
+ */
 @Lazy
 @Slf4j
-@Getter
-@Setter
 @Component
 public class DownloadProgressHandler extends TextWebSocketHandler {
 
-    private Map<String, WebSocketSession> sessions = new ConcurrentHashMap<>();
-    // Map to store alternative identifiers (torrent names) pointing to the same session
-    private Map<String, String> identifierMap = new ConcurrentHashMap<>();
+    static final String ALL = "all";
+    private static final int MAX_TOPICS_PER_SESSION = 1024;
+
+    // session id -> subscriber
+    private final Map<String, Subscriber> subscribers = new ConcurrentHashMap<>();
+    // topic -> subscribers, a topic without subscribers is removed
+    private final Map<String, Set<Subscriber>> topics = new ConcurrentHashMap<>();
+    // alternative identifier (torrent name, Bt torrent id) -> torrent hash
+    private final Map<String, String> identifierMap = new ConcurrentHashMap<>();
+    // torrent hash -> its alternative identifiers, so they are dropped with the torrent
+    private final Map<String, Set<String>> aliases = new ConcurrentHashMap<>();
+    // torrent hash -> latest state not broadcast yet
+    private final Map<String, ProgressSnapshot> pending = new ConcurrentHashMap<>();
+    // torrent hash -> last state broadcast, the base of the next delta
+    private final Map<String, ProgressSnapshot> lastSent = new ConcurrentHashMap<>();
+    private final Map<String, Integer> framesSinceKeyframe = new ConcurrentHashMap<>();
+    // shared by the broadcaster and subscribing sessions, guarded by itself
+    private final ProgressFrameEncoder encoder = new ProgressFrameEncoder();
+    private final ExecutorService senders = Executors.newVirtualThreadPerTaskExecutor();
+
+    @Value("${downloads.progress.ws.send-time-limit-ms:5000}")
+    private int sendTimeLimit;
+    @Value("${downloads.progress.ws.buffer-size-limit:65536}")
+    private int bufferSizeLimit;
+    @Value("${downloads.progress.keyframe-interval:10}")
+    private int keyframeInterval;
 
     @Override
     public void afterConnectionEstablished(WebSocketSession session) {
-        // Get the torrentHash from the session attributes
+        WebSocketSession decorated = new ConcurrentWebSocketSessionDecorator(session, sendTimeLimit, bufferSizeLimit,
+                ConcurrentWebSocketSessionDecorator.OverflowStrategy.DROP);
+        Subscriber subscriber = new Subscriber(decorated);
+        subscribers.put(session.getId(), subscriber);
+        log.info("WebSocket session {} established", session.getId());
+
+        // Pages that still connect with ?torrentHash= start subscribed to it
         String torrentHash = (String) session.getAttributes().get("torrentHash");
-        // Store the session using torrentHash as the key
-        sessions.put(torrentHash, session);
-        log.info("WebSocket session established for torrent hash: {}", torrentHash);
+        if (torrentHash != null) {
+            subscribe(subscriber, torrentHash);
+        }
+    }
+
+    @Override
+    protected void handleTextMessage(WebSocketSession session, TextMessage message) {
+        Subscriber subscriber = subscribers.get(session.getId());
+        if (subscriber == null) {
+            return;
+        }
+        String command = message.getPayload().trim();
+        int space = command.indexOf(' ');
+        String topic = space < 0 ? "" : command.substring(space + 1).trim();
+        if (topic.isEmpty()) {
+            log.debug("Ignoring progress command '{}' of session {}", command, session.getId());
+            return;
+        }
+        switch (command.substring(0, space)) {
+            case "subscribe" -> subscribe(subscriber, topic);
+            case "unsubscribe" -> unsubscribe(subscriber, topic(topic));
+            default -> log.debug("Ignoring progress command '{}' of session {}", command, session.getId());
+        }
     }
 
     @Override
     public void afterConnectionClosed(WebSocketSession session, CloseStatus status) throws Exception {
-        String torrentId = (String) session.getAttributes().get("torrentHash");
-        sessions.remove(torrentId);
-        // Clean up any alternative identifiers pointing to this session
-        identifierMap.entrySet().removeIf(entry -> entry.getValue().equals(torrentId));
+        Subscriber subscriber = subscribers.remove(session.getId());
+        if (subscriber != null) {
+            subscriber.topics.forEach(topic -> unsubscribe(subscriber, topic));
+        }
         super.afterConnectionClosed(session, CloseStatus.NORMAL);
     }
 
     /**
      * Register an alternative identifier (like torrent name) for a torrent hash
      */
-    public void registerAlternativeIdentifier(String alternativeId, String torrentHash) {
+    public void registerAlternativeIdentifier(String alternativeId, String hash) {
+        String torrentHash = normalizeHash(hash);
         if (alternativeId != null && !alternativeId.equals(torrentHash)) {
             identifierMap.put(alternativeId, torrentHash);
+            aliases.computeIfAbsent(torrentHash, hash -> ConcurrentHashMap.newKeySet()).add(alternativeId);
             log.info("Registered alternative identifier '{}' for torrent hash '{}'", alternativeId, torrentHash);
         }
     }
 
-    public void sendProgressUpdate(String torrentId, String message, String downloaded, String uploaded, int peerCount, String remainingTime, boolean complete) {
-        // Try to find the session directly first
-        WebSocketSession session = sessions.get(torrentId);
+    /**
+     * Records the latest state of a torrent for the next broadcast. Never blocks.
+     */
+    public void publishProgress(String torrentId, double completePercents, long downRate, long upRate, int peerCount, long etaSeconds, boolean complete) {
+        // Use the hash the page subscribed with if this is an alternative identifier
+        String torrentHash = normalizeHash(identifierMap.getOrDefault(torrentId, torrentId));
+        ProgressSnapshot snapshot = new ProgressSnapshot(torrentHash, (int) Math.round(completePercents * 100),
+                downRate, upRate, peerCount, etaSeconds, complete);
+        // a completion must not be overwritten by a late tick
+        pending.merge(torrentHash, snapshot, (previous, latest) -> previous.complete() ? previous : latest);
+    }
+
+    @Scheduled(fixedRateString = "${downloads.progress.broadcast-interval-ms:1000}")
+    public void broadcast() {
+        Map<Subscriber, StringBuilder> batches = new HashMap<>();
+        Set<Subscriber> everything = topics.getOrDefault(ALL, Set.of());
+        pending.forEach((torrentHash, snapshot) -> {
+            if (!pending.remove(torrentHash, snapshot)) {
+                // replaced in the meantime, the newer state goes out with the next tick
+                return;
+            }
+            Set<Subscriber> direct = topics.getOrDefault(torrentHash, Set.of());
+            if (direct.isEmpty() && everything.isEmpty()) {
+                lastSent.put(torrentHash, snapshot);
+                return;
+            }
 
-        // If not found, check if this is an alternative identifier
-        if (session == null) {
-            String actualTorrentHash = identifierMap.get(torrentId);
-            if (actualTorrentHash != null) {
-                session = sessions.get(actualTorrentHash);
-                torrentId = actualTorrentHash; // Use the actual hash for HTML IDs
+            int frames = framesSinceKeyframe.merge(torrentHash, 1, Integer::sum);
+            ProgressSnapshot previous = frames >= keyframeInterval ? null : lastSent.get(torrentHash);
+            if (previous == null) {
+                framesSinceKeyframe.put(torrentHash, 0);
+            }
+            String encoded;
+            synchronized (encoder) {
+                encoded = encoder.encode(snapshot, previous);
+            }
+            lastSent.put(torrentHash, snapshot);
+            if (encoded == null) {
+                return;
+            }
+            direct.forEach(subscriber -> append(batches, subscriber, encoded));
+            for (Subscriber subscriber : everything) {
+                // a session subscribed to both gets the frame once
+                if (!subscriber.topics.contains(torrentHash)) {
+                    append(batches, subscriber, encoded);
+                }
             }
+        });
+        batches.forEach((subscriber, batch) -> enqueue(subscriber, new TextMessage(batch.append(']').toString())));
+    }
+
+    /**
+     * Forgets a torrent that is no longer downloading.
+     */
+    public void remove(String hash) {
+        String torrentHash = normalizeHash(hash);
+        pending.remove(torrentHash);
+        lastSent.remove(torrentHash);
+        framesSinceKeyframe.remove(torrentHash);
+        Set<String> removed = aliases.remove(torrentHash);
+        if (removed != null) {
+            removed.forEach(identifierMap::remove);
         }
+    }
 
-        if (session != null && session.isOpen()) {
-            String webResponse = "<div id=\"progress-bar-" + torrentId + "\" class=\"progress progress-bar\" role=\"progressbar\" hx-swap-oob=\"true\" style=\"width: " + message + ";height:5px;\" aria-valuenow=\"" + message + "\" aria-valuemin=\"0\" aria-valuemax=\"100\"></div><div id=\"torrent-stats-" + torrentId + "\" class=\"container\"> <div class=\"row\"> <div class=\"col\"> <p class=\"text-body-secondary\">" + message + "</p></div> <div class=\"col\"> <p class=\"text-body-secondary\"><i class=\"bi bi-arrow-down\"></i> " + downloaded + "</p> </div> <div class=\"col\"> <p class=\"text-body-secondary\"><i class=\"bi bi-arrow-up\"></i> " + uploaded + "</p> </div> <div class=\"col\"> <p class=\"text-body-secondary\">" + peerCount + "P</p> </div> <div class=\"col\"> <p class=\"text-body-secondary\">ETA " + remainingTime + "</p> </div> </div> </div>";
-            try {
-                session.sendMessage(new TextMessage(webResponse));
-                if (complete) {
-                    session.close(CloseStatus.NORMAL);
-                    log.info("Closed WebSocket");
+    @PreDestroy
+    void shutdown() {
+        senders.shutdownNow();
+    }
+
+    private void subscribe(Subscriber subscriber, String requested) {
+        String topic = topic(requested);
+        if (subscriber.topics.size() >= MAX_TOPICS_PER_SESSION || !subscriber.topics.add(topic)) {
+            return;
+        }
+        topics.compute(topic, (key, sessions) -> {
+            Set<Subscriber> subscribed = sessions == null ? ConcurrentHashMap.newKeySet() : sessions;
+            subscribed.add(subscriber);
+            return subscribed;
+        });
+
+        // Start the page from the full state instead of waiting for the next change
+        StringBuilder batch = new StringBuilder("[");
+        synchronized (encoder) {
+            if (ALL.equals(topic)) {
+                lastSent.values().forEach(known -> appendFrame(batch, encoder.encode(known, null)));
+            } else {
+                ProgressSnapshot known = lastSent.get(topic);
+                if (known != null) {
+                    appendFrame(batch, encoder.encode(known, null));
                 }
-            } catch (IOException e) {
-                log.error("Error sending progress update or closing session for torrentId: {}", torrentId, e);
-                // Optionally, remove the session from the map if it's no longer valid
-                sessions.remove(torrentId);
             }
-        } else {
-            log.warn("No WebSocket session found for torrentId: {}", torrentId);
+        }
+        if (batch.length() > 1) {
+            enqueue(subscriber, new TextMessage(batch.append(']').toString()));
+        }
+    }
+
+    private void unsubscribe(Subscriber subscriber, String topic) {
+        subscriber.topics.remove(topic);
+        topics.computeIfPresent(topic, (key, sessions) -> {
+            sessions.remove(subscriber);
+            return sessions.isEmpty() ? null : sessions;
+        });
+    }
+
+    private static String topic(String requested) {
+        return ALL.equalsIgnoreCase(requested) ? ALL : normalizeHash(requested);
+    }
+
+    /**
+     * Hashes arrive in whatever case they were typed or found in a magnet link, topics and frames use upper case.
+     */
+    static String normalizeHash(String torrentHash) {
+        return torrentHash.toUpperCase(Locale.ROOT);
+    }
+
+    private static void append(Map<Subscriber, StringBuilder> batches, Subscriber subscriber, String frame) {
+        appendFrame(batches.computeIfAbsent(subscriber, key -> new StringBuilder("[")), frame);
+    }
+
+    private static void appendFrame(StringBuilder batch, String frame) {
+        if (batch.length() > 1) {
+            batch.append(',');
+        }
+        batch.append(frame);
+    }
+
+    /**
+     * Queues a batch behind the session's earlier ones and starts a drain unless one is running, so deltas
+     * are never applied out of order.
+     */
+    private void enqueue(Subscriber subscriber, TextMessage message) {
+        subscriber.outbox.add(message);
+        if (subscriber.draining.compareAndSet(false, true)) {
+            senders.execute(() -> drain(subscriber));
+        }
+    }
+
+    private void drain(Subscriber subscriber) {
+        do {
+            TextMessage message;
+            while ((message = subscriber.outbox.poll()) != null) {
+                send(subscriber, message);
+            }
+            subscriber.draining.set(false);
+            // a batch queued after the last poll but before the flag was cleared
+        } while (!subscriber.outbox.isEmpty() && subscriber.draining.compareAndSet(false, true));
+    }
+
+    private void send(Subscriber subscriber, TextMessage message) {
+        WebSocketSession session = subscriber.session;
+        try {
+            session.sendMessage(message);
+        } catch (Exception e) {
+            // includes the decorator's SessionLimitExceededException for a consumer stuck past the time limit
+            log.warn("Dropping WebSocket session {}: {}", session.getId(), e.getMessage());
+            try {
+                // afterConnectionClosed removes its subscriptions
+                session.close(CloseStatus.SESSION_NOT_RELIABLE);
+            } catch (IOException ignored) {
+                // already broken
+            }
+        }
+    }
+
+    private static final class Subscriber {
+
+        private final WebSocketSession session;
+        private final Set<String> topics = ConcurrentHashMap.newKeySet();
+        private final Queue<TextMessage> outbox = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean draining = new AtomicBoolean();
+
+        private Subscriber(WebSocketSession session) {
+            this.session = session;
         }
     }
 }
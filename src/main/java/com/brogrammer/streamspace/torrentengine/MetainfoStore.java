@@ -0,0 +1,104 @@
+package com.brogrammer.streamspace.torrentengine;
+
+import bt.metainfo.Torrent;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Locale;
+import java.util.Optional;
+
+/**
+ * Durable store of torrent metainfo keyed by infohash.
+ * <p>
+ * Entries are written once, either from an uploaded .torrent file or from the info dictionary
+ * Bt fetched from peers for a magnet download, so that later clients for the same torrent
+ * can start from the stored file instead of going through the DHT metadata exchange again.
+ */
+@Slf4j
+@Component
+public class MetainfoStore {
+
+    private static final String EXTENSION = ".torrent";
+    private static final byte[] INFO_PREFIX = "d4:info".getBytes(StandardCharsets.US_ASCII);
+    private static final byte DICTIONARY_END = 'e';
+
+    private final Path directory;
+
+    public MetainfoStore(@Value("${torrent.metainfo.directory}") String directory) throws IOException {
+        this.directory = Files.createDirectories(Paths.get(directory));
+        log.info("Metainfo store: {}", this.directory);
+    }
+
+    public Optional<File> find(String torrentHash) {
+        Path path = pathOf(torrentHash);
+        return Files.isRegularFile(path) ? Optional.of(path.toFile()) : Optional.empty();
+    }
+
+    public boolean contains(String torrentHash) {
+        return Files.isRegularFile(pathOf(torrentHash));
+    }
+
+    /**
+     * Stores the raw bytes of a .torrent file, replacing any previous entry for the same hash.
+     */
+    public File store(String torrentHash, byte[] metainfo) throws IOException {
+        Path staging = createStagingFile();
+        try {
+            Files.write(staging, metainfo);
+            return commit(staging, torrentHash);
+        } finally {
+            Files.deleteIfExists(staging);
+        }
+    }
+
+    /**
+     * Empty file inside the store, so that a staged upload can be committed with an atomic rename.
+     */
+    Path createStagingFile() throws IOException {
+        return Files.createTempFile(directory, "staging_", EXTENSION);
+    }
+
+    /**
+     * Moves a staged file into place as the entry for the hash, replacing any previous entry.
+     */
+    File commit(Path staging, String torrentHash) throws IOException {
+        Path target = pathOf(torrentHash);
+        Files.move(staging, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        log.info("Stored metainfo for {}", torrentHash);
+        return target.toFile();
+    }
+
+    /**
+     * Persists the info dictionary of a torrent fetched by Bt unless an entry already exists.
+     * The dictionary is wrapped into a minimal metainfo file ({@code d4:info...e}), which is all
+     * Bt needs to start a client from a file.
+     */
+    public void storeIfAbsent(String torrentHash, Torrent torrent) {
+        if (torrentHash == null || contains(torrentHash)) {
+            return;
+        }
+        try {
+            byte[] info = torrent.getSource().getExchangedMetadata();
+            ByteArrayOutputStream metainfo = new ByteArrayOutputStream(info.length + INFO_PREFIX.length + 1);
+            metainfo.write(INFO_PREFIX);
+            metainfo.write(info);
+            metainfo.write(DICTIONARY_END);
+            store(torrentHash, metainfo.toByteArray());
+        } catch (Exception e) {
+            log.warn("Failed to store metainfo for {}", torrentHash, e);
+        }
+    }
+
+    private Path pathOf(String torrentHash) {
+        return directory.resolve(torrentHash.toUpperCase(Locale.ROOT) + EXTENSION);
+    }
+}
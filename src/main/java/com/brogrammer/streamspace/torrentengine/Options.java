@@ -29,14 +29,10 @@ public class Options {
     private File targetDirectory;
     private boolean seedAfterDownloaded;
     private boolean sequential;
-    private boolean enforceEncryption;
     private boolean disableUi;
     private boolean disableTorrentStateLogs;
     private boolean verboseLogging;
     private boolean traceLogging;
-    private String iface;
-    private Integer port;
-    private Integer dhtPort;
     private boolean downloadAllFiles;
 
 }
@@ -0,0 +1,230 @@
+package com.brogrammer.streamspace.torrentengine;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * IPv4 blocklist checked against every peer connection of the torrent runtime.
+ * <p>
+ * Ranges are read from a local file in the P2P plaintext format ({@code name:1.2.3.0-1.2.3.255}),
+ * as CIDR blocks ({@code 1.2.3.0/24}) or as single addresses, one per line. They are sorted, merged and
+ * kept in two parallel {@code int[]} arrays of range starts and ends, so a list with hundreds of thousands
+ * of ranges takes a few megabytes and a lookup is one binary search without allocation.
+ * Addresses are stored with the sign bit flipped so that signed int order matches unsigned address order.
+ * <p>
+ * The file is reloaded when its modification time changes. An empty {@code torrent.blocklist.file}
+ * disables the blocklist.
+ */
+@Slf4j
+@Component
+public class PeerBlocklist {
+
+    private static final Ranges EMPTY = new Ranges(new int[0], new int[0]);
+
+    private final Path file;
+    private final AtomicLong blocked = new AtomicLong();
+    private volatile Ranges ranges = EMPTY;
+    private volatile long loadedModified = Long.MIN_VALUE;
+
+    public PeerBlocklist(@Value("${torrent.blocklist.file:}") String file) {
+        this.file = file == null || file.isBlank() ? null : Paths.get(file);
+        reload();
+    }
+
+    public boolean isBlocked(InetAddress address) {
+        return address instanceof Inet4Address && isBlocked(toInt(address.getAddress()));
+    }
+
+    /**
+     * @param address IPv4 address as returned by {@link #toInt(byte[])}
+     */
+    boolean isBlocked(int address) {
+        Ranges current = ranges;
+        int key = address ^ Integer.MIN_VALUE;
+        int index = Arrays.binarySearch(current.starts, key);
+        if (index < 0) {
+            // insertion point - 1 is the last range starting before the address
+            index = -index - 2;
+            if (index < 0) {
+                return false;
+            }
+        }
+        return key <= current.ends[index];
+    }
+
+    /**
+     * Counts a rejected connection.
+     */
+    void onBlocked() {
+        blocked.incrementAndGet();
+    }
+
+    public long blockedConnections() {
+        return blocked.get();
+    }
+
+    public int size() {
+        return ranges.starts.length;
+    }
+
+    @Scheduled(fixedDelayString = "${torrent.blocklist.reload-interval-ms:60000}")
+    public void reload() {
+        if (file == null || !Files.isRegularFile(file)) {
+            return;
+        }
+        try {
+            long modified = Files.getLastModifiedTime(file).toMillis();
+            if (modified == loadedModified) {
+                return;
+            }
+            Ranges loaded = parse(file);
+            ranges = loaded;
+            loadedModified = modified;
+            log.info("Loaded {} blocked IP ranges from {}", loaded.starts.length, file);
+        } catch (IOException e) {
+            log.warn("Failed to load blocklist {}, keeping the previous one", file, e);
+        }
+    }
+
+    static int toInt(byte[] address) {
+        return (address[0] & 0xFF) << 24 | (address[1] & 0xFF) << 16 | (address[2] & 0xFF) << 8 | (address[3] & 0xFF);
+    }
+
+    static Ranges parse(Path file) throws IOException {
+        // each range packed as (flipped start << 32 | flipped end), so one primitive sort orders them by start
+        long[] packed = new long[1024];
+        int count = 0;
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.ISO_8859_1)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                long range = parseRange(line);
+                if (range == -1) {
+                    continue;
+                }
+                if (count == packed.length) {
+                    packed = Arrays.copyOf(packed, count * 2);
+                }
+                packed[count++] = range;
+            }
+        }
+        Arrays.sort(packed, 0, count);
+
+        int[] starts = new int[count];
+        int[] ends = new int[count];
+        int merged = -1;
+        for (int i = 0; i < count; i++) {
+            int start = (int) (packed[i] >> 32);
+            int end = (int) packed[i];
+            // overlapping or adjacent ranges are merged
+            if (merged >= 0 && (long) start <= (long) ends[merged] + 1) {
+                ends[merged] = Math.max(ends[merged], end);
+            } else {
+                merged++;
+                starts[merged] = start;
+                ends[merged] = end;
+            }
+        }
+        return new Ranges(Arrays.copyOf(starts, merged + 1), Arrays.copyOf(ends, merged + 1));
+    }
+
+    /**
+     * Parses one line into a packed range, or -1 for blank lines, comments and unparseable lines.
+     * (-1 would be the range 127.255.255.255-127.255.255.255 which is never a peer.)
+     */
+    private static long parseRange(String line) {
+        String value = line.trim();
+        if (value.isEmpty() || value.charAt(0) == '#') {
+            return -1;
+        }
+        // P2P format puts a description in front of the last colon
+        int colon = value.lastIndexOf(':');
+        if (colon >= 0) {
+            value = value.substring(colon + 1).trim();
+        }
+
+        long start;
+        long end;
+        int dash = value.indexOf('-');
+        int slash = value.indexOf('/');
+        if (dash > 0) {
+            start = parseAddress(value, 0, dash);
+            end = parseAddress(value, dash + 1, value.length());
+        } else if (slash > 0) {
+            start = parseAddress(value, 0, slash);
+            int prefix = parseNumber(value, slash + 1, value.length());
+            if (start < 0 || prefix < 0 || prefix > 32) {
+                return -1;
+            }
+            long mask = prefix == 0 ? 0 : (0xFFFFFFFFL << (32 - prefix)) & 0xFFFFFFFFL;
+            start &= mask;
+            end = start | (~mask & 0xFFFFFFFFL);
+        } else {
+            start = end = parseAddress(value, 0, value.length());
+        }
+        if (start < 0 || end < 0 || start > end) {
+            return -1;
+        }
+        int flippedStart = (int) start ^ Integer.MIN_VALUE;
+        int flippedEnd = (int) end ^ Integer.MIN_VALUE;
+        return (long) flippedStart << 32 | (flippedEnd & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Dotted quad to an unsigned 32-bit value, or -1. Deliberately not {@link InetAddress#getByName},
+     * which would resolve anything that is not an address.
+     */
+    private static long parseAddress(String value, int from, int to) {
+        long address = 0;
+        int octets = 0;
+        int octetStart = from;
+        for (int i = from; i <= to; i++) {
+            if (i == to || value.charAt(i) == '.') {
+                int octet = parseNumber(value, octetStart, i);
+                if (octet < 0 || octet > 255) {
+                    return -1;
+                }
+                address = address << 8 | octet;
+                octets++;
+                octetStart = i + 1;
+            }
+        }
+        return octets == 4 ? address : -1;
+    }
+
+    private static int parseNumber(String value, int from, int to) {
+        while (from < to && value.charAt(from) == ' ') {
+            from++;
+        }
+        while (to > from && value.charAt(to - 1) == ' ') {
+            to--;
+        }
+        if (from == to || to - from > 3) {
+            return -1;
+        }
+        int number = 0;
+        for (int i = from; i < to; i++) {
+            char c = value.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            number = number * 10 + (c - '0');
+        }
+        return number;
+    }
+
+    record Ranges(int[] starts, int[] ends) {
+    }
+}
@@ -0,0 +1,51 @@
+package com.brogrammer.streamspace.torrentengine;
+
+/**
+ * Encodes progress as compact JSON frames carrying only the fields that changed since the previous frame,
+ * e.g. {@code {"h":"ABC…","p":4512,"d":1048576,"e":95}}.
+ * <p>
+ * Keys: {@code h} hash, {@code p} progress in hundredths of a percent, {@code d}/{@code u} down/up rate in
+ * bytes per second, {@code n} peers, {@code e} ETA in seconds (-1 unknown), {@code c} complete, {@code k} keyframe.
+ * A keyframe carries every field. Everything is written as integers into one reused buffer, so the
+ * only allocation per frame is the resulting string. Not thread-safe.
+ */
+final class ProgressFrameEncoder {
+
+    private final StringBuilder buffer = new StringBuilder(160);
+
+    /**
+     * @param previous last frame sent for the torrent, or null for a keyframe
+     * @return the frame, or null if nothing changed
+     */
+    String encode(ProgressSnapshot current, ProgressSnapshot previous) {
+        boolean keyframe = previous == null;
+        buffer.setLength(0);
+        buffer.append("{\"h\":\"").append(current.torrentHash()).append('"');
+        int header = buffer.length();
+        if (keyframe) {
+            buffer.append(",\"k\":1");
+        }
+        if (keyframe || current.progress() != previous.progress()) {
+            buffer.append(",\"p\":").append(current.progress());
+        }
+        if (keyframe || current.downRate() != previous.downRate()) {
+            buffer.append(",\"d\":").append(current.downRate());
+        }
+        if (keyframe || current.upRate() != previous.upRate()) {
+            buffer.append(",\"u\":").append(current.upRate());
+        }
+        if (keyframe || current.peerCount() != previous.peerCount()) {
+            buffer.append(",\"n\":").append(current.peerCount());
+        }
+        if (keyframe || current.etaSeconds() != previous.etaSeconds()) {
+            buffer.append(",\"e\":").append(current.etaSeconds());
+        }
+        if (current.complete()) {
+            buffer.append(",\"c\":1");
+        }
+        if (buffer.length() == header) {
+            return null;
+        }
+        return buffer.append('}').toString();
+    }
+}
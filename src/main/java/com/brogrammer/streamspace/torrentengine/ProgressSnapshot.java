@@ -0,0 +1,14 @@
+package com.brogrammer.streamspace.torrentengine;
+
+/**
+ * Latest progress of one torrent as shown by the downloads page.
+ * Progress is in hundredths of a percent, rates in bytes per second, {@code etaSeconds} is -1 while unknown.
+ */
+public record ProgressSnapshot(String torrentHash,
+                               int progress,
+                               long downRate,
+                               long upRate,
+                               int peerCount,
+                               long etaSeconds,
+                               boolean complete) {
+}
@@ -0,0 +1,169 @@
+package com.brogrammer.streamspace.torrentengine;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Decides which completed torrents keep seeding.
+ * <p>
+ * A torrent seeds until it reaches its target ratio or its maximum seed time, whichever comes first;
+ * both default to the global settings and can be overridden per torrent. At most
+ * {@code torrent.seeding.max-concurrent} torrents seed at a time, and the upload slots go to the
+ * torrents with the lowest ratio: seeders over the cap are parked, highest ratio first, and parked
+ * torrents are resumed lowest ratio first as slots free up.
+ * <p>
+ * This class only keeps the bookkeeping, starting and stopping clients is left to
+ * {@link TorrentDownloadManager}.
+ */
+@Slf4j
+@Component
+public class SeedingPolicy {
+
+    private final boolean enabled;
+    private final double targetRatio;
+    private final Duration maxSeedTime;
+    private final int maxConcurrent;
+    private final Map<String, SeedingSession> sessions = new ConcurrentHashMap<>();
+
+    public SeedingPolicy(@Value("${torrent.seeding.enabled:false}") boolean enabled,
+                         @Value("${torrent.seeding.target-ratio:1.0}") double targetRatio,
+                         @Value("${torrent.seeding.max-time-minutes:1440}") long maxSeedMinutes,
+                         @Value("${torrent.seeding.max-concurrent:3}") int maxConcurrent) {
+        this.enabled = enabled;
+        this.targetRatio = targetRatio;
+        this.maxSeedTime = Duration.ofMinutes(maxSeedMinutes);
+        this.maxConcurrent = Math.max(0, maxConcurrent);
+        log.info("Seeding {}: target ratio {}, max seed time {}, max {} concurrent",
+                enabled ? "enabled" : "disabled", targetRatio, maxSeedTime, maxConcurrent);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Registers a completed torrent, per-torrent overrides may be null to use the global targets.
+     *
+     * @return false if the torrent should not seed at all
+     */
+    boolean admit(String torrentHash, long size, Double ratioOverride, Integer minutesOverride, long now) {
+        double ratio = ratioOverride != null ? ratioOverride : targetRatio;
+        Duration seedTime = minutesOverride != null ? Duration.ofMinutes(minutesOverride) : maxSeedTime;
+        if (!enabled || size <= 0 || ratio <= 0 || seedTime.isZero() || seedTime.isNegative()) {
+            return false;
+        }
+        sessions.computeIfAbsent(key(torrentHash), hash -> new SeedingSession(hash, size, ratio, seedTime.toMillis(), now));
+        return true;
+    }
+
+    /**
+     * Feeds the upload counter of the torrent's current client session.
+     */
+    void observeUploaded(String torrentHash, long uploadedBytes) {
+        SeedingSession session = sessions.get(key(torrentHash));
+        if (session != null) {
+            session.observe(uploadedBytes);
+        }
+    }
+
+    Optional<Double> ratio(String torrentHash) {
+        return Optional.ofNullable(sessions.get(key(torrentHash))).map(SeedingSession::ratio);
+    }
+
+    boolean isSeeding(String torrentHash) {
+        return sessions.containsKey(key(torrentHash));
+    }
+
+    void remove(String torrentHash) {
+        sessions.remove(key(torrentHash));
+    }
+
+    /**
+     * Re-evaluates all seeding torrents and returns what the caller has to do to apply the policy.
+     * Finished torrents are forgotten, the active/parked flags of the rest are updated to the new plan.
+     */
+    synchronized Plan evaluate(long now) {
+        List<String> finish = new ArrayList<>();
+        List<SeedingSession> candidates = new ArrayList<>();
+        for (SeedingSession session : sessions.values()) {
+            if (session.ratio() >= session.targetRatio) {
+                log.info("Seeding of {} reached ratio {}", session.torrentHash, String.format("%.2f", session.ratio()));
+                finish.add(session.torrentHash);
+            } else if (now - session.admittedAt >= session.maxSeedMillis) {
+                log.info("Seeding of {} reached its time limit at ratio {}", session.torrentHash, String.format("%.2f", session.ratio()));
+                finish.add(session.torrentHash);
+            } else {
+                candidates.add(session);
+            }
+        }
+        finish.forEach(sessions::remove);
+
+        // lowest ratio first, so that the torrents that gave back the least get the upload slots
+        candidates.sort(Comparator.comparingDouble(SeedingSession::ratio));
+        List<String> park = new ArrayList<>();
+        List<String> resume = new ArrayList<>();
+        for (int i = 0; i < candidates.size(); i++) {
+            SeedingSession session = candidates.get(i);
+            boolean active = i < maxConcurrent;
+            if (active && !session.active) {
+                resume.add(session.torrentHash);
+            } else if (!active && session.active) {
+                park.add(session.torrentHash);
+            }
+            session.active = active;
+        }
+        return new Plan(finish, park, resume);
+    }
+
+    private static String key(String torrentHash) {
+        return torrentHash.toUpperCase(Locale.ROOT);
+    }
+
+    /**
+     * Torrents to stop for good, to pause until a slot frees up and to start seeding again.
+     */
+    record Plan(List<String> finish, List<String> park, List<String> resume) {
+    }
+
+    private static final class SeedingSession {
+
+        private final String torrentHash;
+        private final long size;
+        private final double targetRatio;
+        private final long maxSeedMillis;
+        private final long admittedAt;
+        private volatile boolean active = true;
+        // Bt counts uploads per client session, so totals of previous sessions are carried over
+        private long previousSessions;
+        private long currentSession;
+
+        private SeedingSession(String torrentHash, long size, double targetRatio, long maxSeedMillis, long admittedAt) {
+            this.torrentHash = torrentHash;
+            this.size = size;
+            this.targetRatio = targetRatio;
+            this.maxSeedMillis = maxSeedMillis;
+            this.admittedAt = admittedAt;
+        }
+
+        private synchronized void observe(long uploadedBytes) {
+            if (uploadedBytes < currentSession) {
+                previousSessions += currentSession;
+            }
+            currentSession = uploadedBytes;
+        }
+
+        private synchronized double ratio() {
+            return (previousSessions + currentSession) / (double) size;
+        }
+    }
+}
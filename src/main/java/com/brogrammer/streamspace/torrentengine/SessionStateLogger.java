@@ -24,16 +24,20 @@ public class SessionStateLogger {
 
     private Optional<Torrent> torrent;
     private volatile long started;
-    private volatile long downloaded;
-    private volatile long uploaded;
+    private boolean completionReported;
+    private final String torrentHash;
     private final DownloadProgressHandler downloadProgressHandler;
     private final TorrentDownloadManager torrentDownloadManager;
+    private final SwarmTelemetry swarmTelemetry;
 
-    public SessionStateLogger(DownloadProgressHandler downloadProgressHandler, TorrentDownloadManager torrentDownloadManager) {
+    public SessionStateLogger(String torrentHash, DownloadProgressHandler downloadProgressHandler,
+                              TorrentDownloadManager torrentDownloadManager, SwarmTelemetry swarmTelemetry) {
         started = System.currentTimeMillis();
         this.torrent = Optional.empty();
+        this.torrentHash = torrentHash;
         this.downloadProgressHandler = downloadProgressHandler;
         this.torrentDownloadManager = torrentDownloadManager;
+        this.swarmTelemetry = swarmTelemetry;
         printTorrentInfo();
     }
 
@@ -44,65 +48,64 @@ public class SessionStateLogger {
     public synchronized void printTorrentState(TorrentSessionState sessionState) {
 
         try {
-            long downloaded = sessionState.getDownloaded();
-            long uploaded = sessionState.getUploaded();
+            long remainingBytes = getRemainingBytes(sessionState.getPiecesRemaining(), sessionState.getPiecesNotSkipped());
+            TelemetrySeries telemetry = swarmTelemetry.record(torrentHash, sessionState, remainingBytes);
 
-            String elapsedTime = getElapsedTime();
-            String remainingTime = getRemainingTime(downloaded - this.downloaded,
-                    sessionState.getPiecesRemaining(), sessionState.getPiecesNotSkipped());
-            log.debug(String.format(DURATION_INFO, elapsedTime, remainingTime));
-
-
-            Rate downRate = new Rate(downloaded - this.downloaded);
-            Rate upRate = new Rate(uploaded - this.uploaded);
+            // Smoothed per-second rates, the raw per-tick deltas are too noisy to display
+            long downRate = (long) telemetry.downRate();
+            long upRate = (long) telemetry.upRate();
             int peerCount = sessionState.getConnectedPeers().size();
-            String sessionInfo = String.format(SESSION_INFO, peerCount, downRate.getQuantity(), downRate.getMeasureUnit(),
-                    upRate.getQuantity(), upRate.getMeasureUnit());
-            log.debug(sessionInfo);
-
             int completed = sessionState.getPiecesComplete();
             double completePercents = getCompletePercentage(sessionState.getPiecesTotal(), completed);
-            // double requiredPercents = getTargetPercentage(sessionState.getPiecesTotal(), completed, sessionState.getPiecesRemaining());
-            // graphics.putString(0, 4, getProgressBar(completePercents, requiredPercents));
+            boolean complete = (sessionState.getPiecesRemaining() == 0);
+            long etaSeconds = complete ? 0 : telemetry.etaSeconds();
+
+            // The page formats the numbers itself, nothing is formatted per tick unless debug logging is on
+            if (log.isDebugEnabled()) {
+                logState(sessionState, telemetry, downRate, upRate, peerCount, completePercents, complete);
+            }
 
             if (torrent.isPresent()) {
-                downloadProgressHandler.sendProgressUpdate(torrent.get().getTorrentId().toString().toUpperCase(),
-                        String.format("%.2f%%", completePercents),
-                        String.format(RATE_FORMAT, downRate.getQuantity(), downRate.getMeasureUnit()),
-                        String.format(RATE_FORMAT, upRate.getQuantity(), upRate.getMeasureUnit()),
-                        peerCount,
-                        String.format("%s", remainingTime), Boolean.FALSE);
-                //log.info(String.format("%s", elapsedTime));
+                downloadProgressHandler.publishProgress(torrent.get().getTorrentId().toString().toUpperCase(),
+                        completePercents, downRate, upRate, peerCount, etaSeconds, false);
             }
 
-            boolean complete = (sessionState.getPiecesRemaining() == 0);
-            if (complete) {
-                torrentDownloadManager.onComplete(torrent.get().getTorrentId().toString().toUpperCase());
-                downloadProgressHandler.sendProgressUpdate(torrent.get().getTorrentId().toString().toUpperCase(),
-                        String.format("%.2f%%", completePercents),
-                        String.format(RATE_FORMAT, downRate.getQuantity(), downRate.getMeasureUnit()),
-                        String.format(RATE_FORMAT, upRate.getQuantity(), upRate.getMeasureUnit()),
-                        peerCount,
-                        String.format("%s", remainingTime), Boolean.TRUE);
+            if (!complete && torrent.isPresent() && remainingBytes >= 0) {
+                torrentDownloadManager.onProgress(torrentHash, completePercents, torrent.get().getSize() - remainingBytes);
+            }
+            // a seeding torrent keeps ticking after completion, report it only once
+            if (complete && !completionReported) {
+                completionReported = true;
+                torrentDownloadManager.onComplete(torrent.get().getTorrentId().toString().toUpperCase(), torrent.get().getSize());
+                downloadProgressHandler.publishProgress(torrent.get().getTorrentId().toString().toUpperCase(),
+                        completePercents, downRate, upRate, peerCount, 0, true);
                 //log.info("Download is complete. Press Ctrl-C to stop seeding and exit.");
                 log.info("Download is complete.");
             }
 
-            if (complete) {
-                log.debug(String.format(LOG_ENTRY_SEED, peerCount, upRate.getQuantity(), upRate.getMeasureUnit()));
-            } else {
-                log.debug(String.format(LOG_ENTRY, peerCount, downRate.getQuantity(), downRate.getMeasureUnit(),
-                        upRate.getQuantity(), upRate.getMeasureUnit(), completePercents, remainingTime));
-            }
-
-            this.downloaded = downloaded;
-            this.uploaded = uploaded;
-
         } catch (Throwable e) {
             log.error("Unexpected error when printing session state", e);
         }
     }
 
+    private void logState(TorrentSessionState sessionState, TelemetrySeries telemetry, long downBytes, long upBytes,
+                          int peerCount, double completePercents, boolean complete) {
+        String remainingTime = getRemainingTime(telemetry, sessionState.getPiecesRemaining());
+        log.debug(String.format(DURATION_INFO, getElapsedTime(), remainingTime));
+
+        Rate downRate = new Rate(downBytes);
+        Rate upRate = new Rate(upBytes);
+        log.debug(String.format(SESSION_INFO, peerCount, downRate.getQuantity(), downRate.getMeasureUnit(),
+                upRate.getQuantity(), upRate.getMeasureUnit()));
+
+        if (complete) {
+            log.debug(String.format(LOG_ENTRY_SEED, peerCount, upRate.getQuantity(), upRate.getMeasureUnit()));
+        } else {
+            log.debug(String.format(LOG_ENTRY, peerCount, downRate.getQuantity(), downRate.getMeasureUnit(),
+                    upRate.getQuantity(), upRate.getMeasureUnit(), completePercents, remainingTime));
+        }
+    }
+
     private void printTorrentInfo() {
         printTorrentNameAndSize(torrent);
     }
@@ -118,19 +121,26 @@ public class SessionStateLogger {
         return formatDuration(elapsed);
     }
 
-    private String getRemainingTime(long downloaded, int piecesRemaining, int piecesTotal) {
+    private long getRemainingBytes(int piecesRemaining, int piecesTotal) {
+        if (piecesRemaining == 0) {
+            return 0;
+        } else if (!torrent.isPresent() || piecesTotal == 0) {
+            return -1;
+        }
+        double remaining = piecesRemaining / ((double) piecesTotal);
+        return (long) (torrent.get().getSize() * remaining);
+    }
+
+    private String getRemainingTime(TelemetrySeries telemetry, int piecesRemaining) {
         String remainingStr;
+        long etaSeconds = telemetry.etaSeconds();
         if (piecesRemaining == 0) {
             remainingStr = "-" + WHITESPACES;
-        } else if (downloaded == 0 || !torrent.isPresent()) {
+        } else if (etaSeconds < 0) {
             remainingStr = "\u221E" + WHITESPACES; // infinity
         } else {
-            long size = torrent.get().getSize();
-            double remaining = piecesRemaining / ((double) piecesTotal);
-            long remainingBytes = (long) (size * remaining);
-            Duration remainingTime = Duration.ofSeconds(remainingBytes / downloaded);
             // overwrite trailing chars with whitespaces if there are any
-            remainingStr = formatDuration(remainingTime) + WHITESPACES;
+            remainingStr = formatDuration(Duration.ofSeconds(etaSeconds)) + WHITESPACES;
         }
         return remainingStr;
     }
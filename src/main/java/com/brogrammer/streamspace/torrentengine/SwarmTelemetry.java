@@ -0,0 +1,54 @@
+package com.brogrammer.streamspace.torrentengine;
+
+import bt.torrent.TorrentSessionState;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Per-torrent swarm history, one bounded {@link TelemetrySeries} per torrent hash.
+ */
+@Component
+public class SwarmTelemetry {
+
+    private final Map<String, TelemetrySeries> series = new ConcurrentHashMap<>();
+    private final int capacity;
+
+    public SwarmTelemetry(@Value("${torrent.telemetry.samples:720}") int capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * Records a session state tick and returns the torrent's series.
+     */
+    public TelemetrySeries record(String torrentHash, TorrentSessionState sessionState, long remainingBytes) {
+        TelemetrySeries torrentSeries = series.computeIfAbsent(keyOf(torrentHash), key -> new TelemetrySeries(capacity));
+        torrentSeries.record(System.currentTimeMillis(),
+                sessionState.getDownloaded(),
+                sessionState.getUploaded(),
+                sessionState.getConnectedPeers().size(),
+                sessionState.getPiecesComplete(),
+                remainingBytes);
+        return torrentSeries;
+    }
+
+    public Optional<TelemetrySeries> find(String torrentHash) {
+        return Optional.ofNullable(series.get(keyOf(torrentHash)));
+    }
+
+    public Optional<TelemetrySeries.View> view(String torrentHash) {
+        return find(torrentHash).map(TelemetrySeries::view);
+    }
+
+    public void remove(String torrentHash) {
+        series.remove(keyOf(torrentHash));
+    }
+
+    private static String keyOf(String torrentHash) {
+        return torrentHash.toUpperCase(Locale.ROOT);
+    }
+}
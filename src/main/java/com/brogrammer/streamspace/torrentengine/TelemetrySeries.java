@@ -0,0 +1,130 @@
+package com.brogrammer.streamspace.torrentengine;
+
+/**
+ * Fixed-size ring buffer of swarm samples for a single torrent, kept in primitive arrays
+ * so that recording a tick does not allocate.
+ * <p>
+ * Besides the raw samples it maintains exponentially weighted moving averages of the down and up
+ * rates, which are far less noisy than the rate of a single tick and are used for the ETA.
+ */
+public class TelemetrySeries {
+
+    private static final double SMOOTHING_WINDOW_MILLIS = 30_000;
+
+    private final long[] timestamps;
+    private final long[] downloaded;
+    private final long[] uploaded;
+    private final int[] peers;
+    private final int[] piecesComplete;
+    private int next;
+    private int size;
+    private double downRate;
+    private double upRate;
+    private long remainingBytes = -1;
+
+    TelemetrySeries(int capacity) {
+        this.timestamps = new long[capacity];
+        this.downloaded = new long[capacity];
+        this.uploaded = new long[capacity];
+        this.peers = new int[capacity];
+        this.piecesComplete = new int[capacity];
+    }
+
+    synchronized void record(long timestamp, long downloadedBytes, long uploadedBytes, int peerCount,
+                             int completedPieces, long bytesRemaining) {
+        remainingBytes = bytesRemaining;
+        if (size > 0) {
+            int last = (next - 1 + timestamps.length) % timestamps.length;
+            long elapsed = timestamp - timestamps[last];
+            if (elapsed > 0) {
+                double alpha = 1 - Math.exp(-elapsed / SMOOTHING_WINDOW_MILLIS);
+                // Bt occasionally reports a lower total than the previous tick, treat it as no progress
+                double down = Math.max(0, downloadedBytes - downloaded[last]) * 1000d / elapsed;
+                double up = Math.max(0, uploadedBytes - uploaded[last]) * 1000d / elapsed;
+                downRate = size == 1 ? down : downRate + alpha * (down - downRate);
+                upRate = size == 1 ? up : upRate + alpha * (up - upRate);
+            }
+        }
+
+        timestamps[next] = timestamp;
+        downloaded[next] = downloadedBytes;
+        uploaded[next] = uploadedBytes;
+        peers[next] = peerCount;
+        piecesComplete[next] = completedPieces;
+        next = (next + 1) % timestamps.length;
+        size = Math.min(size + 1, timestamps.length);
+    }
+
+    /**
+     * Smoothed download rate in bytes per second.
+     */
+    public synchronized double downRate() {
+        return downRate;
+    }
+
+    /**
+     * Smoothed upload rate in bytes per second.
+     */
+    public synchronized double upRate() {
+        return upRate;
+    }
+
+    /**
+     * Bytes uploaded by the current client session as of the latest sample.
+     */
+    public synchronized long latestUploaded() {
+        return size == 0 ? 0 : uploaded[(next - 1 + timestamps.length) % timestamps.length];
+    }
+
+    /**
+     * Estimated seconds until the remaining bytes are downloaded at the smoothed rate, or -1 if unknown.
+     */
+    public synchronized long etaSeconds() {
+        if (remainingBytes == 0) {
+            return 0;
+        }
+        return remainingBytes < 0 || downRate < 1 ? -1 : (long) Math.ceil(remainingBytes / downRate);
+    }
+
+    synchronized View view() {
+        long[] time = new long[size];
+        long[] down = new long[size];
+        long[] up = new long[size];
+        int[] peerCounts = new int[size];
+        int[] pieces = new int[size];
+        double[] downRates = new double[size];
+        double[] upRates = new double[size];
+
+        int first = (next - size + timestamps.length) % timestamps.length;
+        for (int i = 0; i < size; i++) {
+            int index = (first + i) % timestamps.length;
+            time[i] = timestamps[index];
+            down[i] = downloaded[index];
+            up[i] = uploaded[index];
+            peerCounts[i] = peers[index];
+            pieces[i] = piecesComplete[index];
+            if (i > 0 && time[i] > time[i - 1]) {
+                downRates[i] = Math.max(0, down[i] - down[i - 1]) * 1000d / (time[i] - time[i - 1]);
+                upRates[i] = Math.max(0, up[i] - up[i - 1]) * 1000d / (time[i] - time[i - 1]);
+            }
+        }
+        return new View(time, down, up, peerCounts, pieces, downRates, upRates,
+                downRate, upRate, etaSeconds());
+    }
+
+    /**
+     * Oldest-first copy of the samples as served by the telemetry endpoint.
+     * Rates are in bytes per second, {@code etaSeconds} is -1 while no estimate is possible.
+     */
+    public record View(long[] timestamps,
+                       long[] downloaded,
+                       long[] uploaded,
+                       int[] peers,
+                       int[] piecesComplete,
+                       double[] downRates,
+                       double[] upRates,
+                       double smoothedDownRate,
+                       double smoothedUpRate,
+                       long etaSeconds) {
+    }
+}
@@ -19,92 +19,53 @@ import bt.Bt;
 import bt.BtClientBuilder;
 import bt.data.Storage;
 import bt.data.file.FileSystemStorage;
-import bt.dht.DHTConfig;
-import bt.dht.DHTModule;
 import bt.metainfo.TorrentId;
-import bt.protocol.crypto.EncryptionPolicy;
 import bt.runtime.BtClient;
 import bt.runtime.BtRuntime;
-import bt.runtime.Config;
 import bt.torrent.selector.PieceSelector;
 import bt.torrent.selector.RarestFirstSelector;
 import bt.torrent.selector.SequentialSelector;
 import com.brogrammer.streamspace.content.Indexer;
-import com.google.inject.Module;
+import com.brogrammer.streamspace.content.TorrentFileEntry;
+import com.brogrammer.streamspace.services.ContentDirectoryServices;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.task.TaskRejectedException;
 
 import java.io.File;
-import java.net.InetAddress;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.net.UnknownHostException;
-import java.security.Security;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
 import java.util.Optional;
-import java.util.function.Supplier;
 
 @Slf4j
 public class TorrentClient {
 
     private boolean running;
-    private BtRuntime runtime;
     public BtClient client;
     private Optional<SessionStateLogger> torrentStateLogger;
     private Options options;
+    private final String torrentHash;
     private final Indexer indexer;
     private final DownloadProgressHandler downloadProgressHandler;
     private final TorrentDownloadManager torrentDownloadManager;
+    private final MetainfoStore metainfoStore;
+    private final TorrentRuntime torrentRuntime;
+    private final SwarmTelemetry swarmTelemetry;
 
-    public TorrentClient(Options options, Indexer indexer, DownloadProgressHandler downloadProgressHandler, TorrentDownloadManager torrentDownloadManager) {
+    public TorrentClient(Options options, Indexer indexer, DownloadProgressHandler downloadProgressHandler, TorrentDownloadManager torrentDownloadManager, MetainfoStore metainfoStore, TorrentRuntime torrentRuntime, SwarmTelemetry swarmTelemetry) {
         this.options = options;
+        this.torrentHash = options.getTorrentHash();
         this.indexer = indexer;
         this.downloadProgressHandler = downloadProgressHandler;
         this.torrentDownloadManager = torrentDownloadManager;
+        this.metainfoStore = metainfoStore;
+        this.torrentRuntime = torrentRuntime;
+        this.swarmTelemetry = swarmTelemetry;
 
-        configureSecurity();
-
-        Optional<InetAddress> acceptorAddressOverride = getAcceptorAddressOverride();
-        Optional<Integer> portOverride = getPortOverride();
-        Optional<Integer> dhtPortOverride = getDHTPortOverride();
-
-        Config config = new Config() {
-            @Override
-            public InetAddress getAcceptorAddress() {
-                return acceptorAddressOverride.orElseGet(super::getAcceptorAddress);
-            }
-
-            @Override
-            public int getAcceptorPort() {
-                return portOverride.orElseGet(super::getAcceptorPort);
-            }
-
-            @Override
-            public int getNumOfHashingThreads() {
-                return Runtime.getRuntime().availableProcessors();
-            }
-
-            @Override
-            public EncryptionPolicy getEncryptionPolicy() {
-                return options.isEnforceEncryption()? EncryptionPolicy.REQUIRE_ENCRYPTED : EncryptionPolicy.PREFER_PLAINTEXT;
-            }
-        };
-
-        Module dhtModule = new DHTModule(new DHTConfig() {
-            @Override
-            public int getListeningPort() {
-                return dhtPortOverride.orElseGet(super::getListeningPort);
-            }
-
-            @Override
-            public boolean shouldUseRouterBootstrap() {
-                return true;
-            }
-        });
-
-        this.runtime = BtRuntime.builder(config)
-                .module(dhtModule)
-                .autoLoadModules()
-                .disableAutomaticShutdown()
-                .build();
+        // All clients share one runtime, i.e. one port, one DHT node and one connection pool
+        BtRuntime runtime = torrentRuntime.runtime();
 
         Storage storage = new FileSystemStorage(options.getTargetDirectory().toPath());
         PieceSelector selector = options.isSequential() ?
@@ -115,7 +76,7 @@ public class TorrentClient {
                 .selector(selector);
 
         if (!options.isDisableTorrentStateLogs()) {
-            torrentStateLogger = Optional.of(new SessionStateLogger(downloadProgressHandler, torrentDownloadManager));
+            torrentStateLogger = Optional.of(new SessionStateLogger(options.getTorrentHash(), downloadProgressHandler, torrentDownloadManager, swarmTelemetry));
             clientBuilder.afterTorrentFetched(torrent -> {
                 String torrentName = torrent.getName();
                 TorrentId torrentId = torrent.getTorrentId();
@@ -126,18 +87,20 @@ public class TorrentClient {
                 String btTorrentId = torrentId.toString().toUpperCase();
                 downloadProgressHandler.registerAlternativeIdentifier(btTorrentId, options.getTorrentHash());
 
-                torrent.getFiles().forEach(file -> {
-                    file.getPathElements().forEach(fileName -> {
-                        if (fileName.endsWith(".mp4") || fileName.endsWith(".mkv") || fileName.endsWith(".avi")) {
-                            indexer.indexMovie(file, torrentName, fileName, torrentId, "video/mp4");
-                            log.info("Video {}", fileName);
-                        } else if (fileName.endsWith(".mp3") || fileName.endsWith(".flac")) {
-                            log.info("Audio {}", fileName);
-                        } else {
-                            log.info("Others {}", fileName);
-                        }
-                    });
-                });
+                // Keep the metainfo so that restarts and resumes skip the metadata exchange
+                metainfoStore.storeIfAbsent(btTorrentId, torrent);
+
+                // Now that the size is known, make sure it fits on the target disk
+                torrentDownloadManager.onMetadata(options.getTorrentHash(), options.getTargetDirectory(), torrent);
+
+                List<TorrentFileEntry> files = torrent.getFiles().stream()
+                        .map(file -> new TorrentFileEntry(String.join("/", file.getPathElements()), file.getSize()))
+                        .toList();
+                try {
+                    indexer.indexTorrent(btTorrentId, torrentName, contentStoreOf(options.getTargetDirectory()), files);
+                } catch (TaskRejectedException e) {
+                    log.warn("Indexing queue is full, torrent {} will be picked up by the next library refresh", torrentName);
+                }
                 torrentStateLogger.ifPresent(logger -> logger.setTorrent(torrent));
             });
         }
@@ -153,46 +116,12 @@ public class TorrentClient {
         this.client = clientBuilder.build();
     }
 
-    private Optional<Integer> getPortOverride() {
-        return getOptionalPort(options::getPort);
-    }
-
-    private Optional<Integer> getDHTPortOverride() {
-        return getOptionalPort(options::getDhtPort);
-    }
-
-    private static Optional<Integer> getOptionalPort(Supplier<Integer> portSupplier) {
-        Integer port = portSupplier.get();
-        if (port == null) {
-            return Optional.empty();
-        } else if (port < 1024 || port >= 65535) {
-            throw new IllegalArgumentException("Invalid port: " + port + "; expected 1024..65534");
-        }
-        return Optional.of(port);
-    }
-
-    private Optional<InetAddress> getAcceptorAddressOverride() {
-        String iface = options.getIface();
-        if (iface == null) {
-            return Optional.empty();
-        }
-        try {
-            return Optional.of(InetAddress.getByName(iface));
-        } catch (UnknownHostException e) {
-            throw new IllegalArgumentException("Failed to parse the acceptor's internet address", e);
-        }
-    }
-
-    private void configureSecurity() {
-        // Starting with JDK 8u152 this is a way to programmatically allow unlimited encryption
-        // See http://www.oracle.com/technetwork/java/javase/8u152-relnotes-3850503.html
-        String key = "crypto.policy";
-        String value = "unlimited";
-        try {
-            Security.setProperty(key, value);
-        } catch (Exception e) {
-            log.error("Failed to set security property '{}' to '{}'", key, value, e);
-        }
+    /**
+     * Content store prefix of a download directory, i.e. its path relative to the user's home.
+     */
+    private static String contentStoreOf(File targetDirectory) {
+        Path relative = Paths.get(ContentDirectoryServices.userHomePath).relativize(targetDirectory.toPath());
+        return relative.toString().isEmpty() ? "" : relative + File.separator;
     }
 
     private static URL toUrl(File file) {
@@ -209,13 +138,14 @@ public class TorrentClient {
         }
 
         running = true;
+        torrentRuntime.markResumed(torrentHash);
         try {
             client
                     .startAsync(state -> {
 
                         torrentStateLogger.ifPresent(p -> p.printTorrentState(state));
 
-                        if (!options.isSeedAfterDownloaded() && state.getPiecesRemaining() == 0) {
+                        if (options != null && !options.isSeedAfterDownloaded() && state.getPiecesRemaining() == 0) {
                             torrentStateLogger = Optional.empty(); // mark for garbage collection
                             options = null;
                         }
@@ -1,24 +1,33 @@
 package com.brogrammer.streamspace.torrentengine;
 
+import bt.metainfo.Torrent;
 import com.brogrammer.streamspace.common.DOWNLOADTYPE;
 import com.brogrammer.streamspace.content.Indexer;
+import com.brogrammer.streamspace.common.DOWNLOADSTATE;
 import com.brogrammer.streamspace.downloads.Downloads;
+import com.brogrammer.streamspace.downloads.ProgressWriteBehind;
 import com.brogrammer.streamspace.services.ContentDirectoryServices;
 import com.brogrammer.streamspace.downloads.DownloadTask;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
 
 import java.io.File;
 import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
-import java.security.MessageDigest;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
-import com.dampcake.bencode.Bencode;
-import com.dampcake.bencode.Type;
 
 @Slf4j
 @Service
@@ -29,31 +38,76 @@ public class TorrentDownloadManager {
     final Downloads downloads;
     final Indexer indexer;
     final DownloadProgressHandler downloadProgressHandler;
+    final MetainfoStore metainfoStore;
+    final TorrentRuntime torrentRuntime;
+    final SwarmTelemetry swarmTelemetry;
+    final SeedingPolicy seedingPolicy;
+    final ProgressWriteBehind progressWriteBehind;
+    final DiskSpaceAdmission diskSpaceAdmission;
 
     public void startDownload(DownloadTask downloadTask) {
-        String torrentHash = downloadTask.getTorrentHash();
-        TorrentClient torrentClient = clients.get(torrentHash);
-        boolean isNewDownload = !downloads.existsById(torrentHash);
-
         try {
-            if (torrentClient == null) {
-                torrentClient = new TorrentClient(
-                        downloadTaskToOptions(downloadTask),
-                        indexer,
-                        downloadProgressHandler,
-                        this);
-                clients.put(torrentHash, torrentClient);
-            }
-            torrentClient.resume();
-
+            String torrentHash = downloadTask.getTorrentHash();
+            boolean isNewDownload = !downloads.existsById(torrentHash);
+            startClient(downloadTask);
             if (isNewDownload) {
                 downloads.save(downloadTask);
+            } else if (!seedingPolicy.isSeeding(torrentHash)) {
+                progressWriteBehind.state(torrentHash, DOWNLOADSTATE.DOWNLOADING);
             }
         } catch (Exception e) {
             log.error(e.getMessage(), e);
         }
     }
 
+    /**
+     * Saves new tasks in one transaction and then starts their clients. The tasks whose client failed to
+     * start are deleted again.
+     *
+     * @return the error message of every task that failed to start, by torrent hash
+     */
+    public Map<String, String> startDownloads(List<DownloadTask> downloadTasks) {
+        if (downloadTasks.isEmpty()) {
+            return Map.of();
+        }
+        // saved as new tasks in their initial state, so the clients are started without another lookup or state write
+        downloads.saveAll(downloadTasks);
+        Map<String, String> failures = new LinkedHashMap<>();
+        for (DownloadTask downloadTask : downloadTasks) {
+            try {
+                startClient(downloadTask);
+            } catch (Exception e) {
+                log.error("Failed to start {}: {}", downloadTask.getTorrentHash(), e.getMessage(), e);
+                failures.put(downloadTask.getTorrentHash(), String.valueOf(e.getMessage()));
+            }
+        }
+        if (!failures.isEmpty()) {
+            failures.keySet().forEach(clients::remove);
+            downloads.deleteAllById(failures.keySet());
+        }
+        return failures;
+    }
+
+    /**
+     * Creates the task's client unless it exists and resumes it.
+     */
+    private void startClient(DownloadTask downloadTask) {
+        String torrentHash = downloadTask.getTorrentHash();
+        TorrentClient torrentClient = clients.get(torrentHash);
+        if (torrentClient == null) {
+            torrentClient = new TorrentClient(
+                    downloadTaskToOptions(downloadTask),
+                    indexer,
+                    downloadProgressHandler,
+                    this,
+                    metainfoStore,
+                    torrentRuntime,
+                    swarmTelemetry);
+            clients.put(torrentHash, torrentClient);
+        }
+        torrentClient.resume();
+    }
+
     public void startAllPendingDownloads() {
         var downloadTasks = downloads.findAll();
         if (downloadTasks.isEmpty()) {
@@ -66,104 +120,215 @@ public class TorrentDownloadManager {
 
     public void pauseDownload(String torrentHash) {
         clients.get(torrentHash).pause();
+        progressWriteBehind.state(torrentHash, DOWNLOADSTATE.PAUSED);
     }
 
-    public void onComplete(String torrentHash) {
-        downloads.deleteById(torrentHash);
-        var torrentClient = clients.get(torrentHash);
-        if (torrentClient.client.isStarted()) {
-            torrentClient.client.stop();
-            log.info("Torrent Client has been stopped {}", torrentHash);
+    /**
+     * Buffers the progress reported by a session tick, it is written to the task with the next flush.
+     */
+    void onProgress(String torrentHash, double progress, long bytesDownloaded) {
+        progressWriteBehind.progress(torrentHash, progress, bytesDownloaded);
+        diskSpaceAdmission.progress(torrentHash, bytesDownloaded);
+    }
+
+    /**
+     * Runs disk space admission once the torrent's size is known. Called on a Bt thread, so the admission,
+     * which reads the task's progress from the database and may pause or cancel the client, runs asynchronously.
+     */
+    void onMetadata(String torrentHash, File targetDirectory, Torrent torrent) {
+        long size = torrent.getSize();
+        CompletableFuture.runAsync(() -> admit(torrentHash, targetDirectory, size))
+                .exceptionally(e -> {
+                    log.error("Failed to run disk space admission for {}", torrentHash, e);
+                    return null;
+                });
+    }
+
+    private void admit(String torrentHash, File targetDirectory, long size) {
+        long bytesDownloaded = downloads.findById(torrentHash).map(DownloadTask::getBytesDownloaded).orElse(0L);
+        switch (diskSpaceAdmission.admit(torrentHash, targetDirectory.toPath(), size, bytesDownloaded)) {
+            case QUEUED -> {
+                Optional.ofNullable(clients.get(torrentHash)).ifPresent(TorrentClient::pause);
+                progressWriteBehind.state(torrentHash, DOWNLOADSTATE.QUEUED);
+            }
+            case REFUSED -> {
+                log.warn("Cancelling {}, it does not fit on {}", torrentHash, targetDirectory);
+                cancelDownload(torrentHash);
+            }
+            case ADMITTED -> {
+                // the download goes on
+            }
+        }
+    }
+
+    /**
+     * Starts queued downloads once enough space has been freed.
+     */
+    @Scheduled(fixedDelayString = "${torrent.disk.retry-interval-ms:60000}")
+    public void admitQueuedDownloads() {
+        diskSpaceAdmission.admitQueued().forEach(torrentHash -> {
+            log.info("Enough disk space for {} now, resuming", torrentHash);
+            Optional.ofNullable(clients.get(torrentHash)).ifPresent(TorrentClient::resume);
+            progressWriteBehind.state(torrentHash, DOWNLOADSTATE.DOWNLOADING);
+        });
+    }
+
+    /**
+     * Indexes a completed torrent and starts seeding or finishes it. Called on a Bt thread, so the work, which
+     * hits the database and may stop the client, runs asynchronously.
+     */
+    public void onComplete(String torrentHash, long size) {
+        CompletableFuture.runAsync(() -> complete(torrentHash, size))
+                .exceptionally(e -> {
+                    log.error("Failed to complete {}", torrentHash, e);
+                    return null;
+                });
+    }
+
+    private void complete(String torrentHash, long size) {
+        diskSpaceAdmission.release(torrentHash);
+        indexer.finalizeTorrent(torrentHash);
+        Optional<DownloadTask> task = downloads.findById(torrentHash);
+        boolean seeding = seedingPolicy.admit(torrentHash, size,
+                task.map(DownloadTask::getSeedRatio).orElse(null),
+                task.map(DownloadTask::getSeedMinutes).orElse(null),
+                System.currentTimeMillis());
+        if (seeding) {
+            // the task is kept until seeding is over so that its targets survive a restart
+            log.info("Torrent {} completed, seeding", torrentHash);
+            progressWriteBehind.progress(torrentHash, 100, size);
+            progressWriteBehind.state(torrentHash, DOWNLOADSTATE.SEEDING);
+            enforceSeedingPolicy();
+        } else {
+            finish(torrentHash);
         }
-        clients.remove(torrentHash);
     }
 
     public void cancelDownload(String torrentHash) {
         clients.get(torrentHash).pause();
+        diskSpaceAdmission.release(torrentHash);
+        progressWriteBehind.discard(torrentHash);
         downloads.deleteById(torrentHash);
         clients.remove(torrentHash);
+        swarmTelemetry.remove(torrentHash);
+        downloadProgressHandler.remove(torrentHash);
+        seedingPolicy.remove(torrentHash);
+    }
+
+    /**
+     * Overrides the global seeding targets for a torrent, null keeps the global value.
+     * Takes effect when the torrent completes.
+     */
+    public void setSeedingTargets(String torrentHash, Double seedRatio, Integer seedMinutes) {
+        downloads.findById(torrentHash).ifPresent(task -> {
+            task.setSeedRatio(seedRatio);
+            task.setSeedMinutes(seedMinutes);
+            downloads.save(task);
+        });
+    }
+
+    /**
+     * Stops torrents that met their seeding targets and moves the upload slots to the lowest-ratio seeders.
+     */
+    @Scheduled(fixedDelayString = "${torrent.seeding.evaluation-interval-ms:30000}")
+    public synchronized void enforceSeedingPolicy() {
+        if (!seedingPolicy.isEnabled()) {
+            return;
+        }
+        clients.keySet().stream()
+                .filter(seedingPolicy::isSeeding)
+                .forEach(torrentHash -> swarmTelemetry.find(torrentHash)
+                        .ifPresent(series -> seedingPolicy.observeUploaded(torrentHash, series.latestUploaded())));
+
+        SeedingPolicy.Plan plan = seedingPolicy.evaluate(System.currentTimeMillis());
+        plan.finish().forEach(this::finish);
+        plan.park().forEach(torrentHash -> {
+            log.info("Parking seeder {}, seeding slots are taken by lower-ratio torrents", torrentHash);
+            Optional.ofNullable(clients.get(torrentHash)).ifPresent(TorrentClient::pause);
+        });
+        plan.resume().forEach(torrentHash -> {
+            log.info("Resuming seeder {}", torrentHash);
+            Optional.ofNullable(clients.get(torrentHash)).ifPresent(TorrentClient::resume);
+        });
+    }
+
+    private void finish(String torrentHash) {
+        diskSpaceAdmission.release(torrentHash);
+        progressWriteBehind.discard(torrentHash);
+        downloads.deleteById(torrentHash);
+        var torrentClient = clients.remove(torrentHash);
+        if (torrentClient != null && torrentClient.client.isStarted()) {
+            torrentClient.client.stop();
+            log.info("Torrent Client has been stopped {}", torrentHash);
+        }
+        swarmTelemetry.remove(torrentHash);
+        downloadProgressHandler.remove(torrentHash);
+        seedingPolicy.remove(torrentHash);
     }
 
     private Options downloadTaskToOptions(DownloadTask downloadTask) {
         Options options = new Options();
-        options.setMetainfoFile(downloadTask.getMetaInfoFile());
+        options.setMetainfoFile(resolveMetainfoFile(downloadTask));
         options.setTorrentHash(downloadTask.getTorrentHash());
         options.setMagnetUri(createMagnetUri(downloadTask.getTorrentHash()));
         options.setTargetDirectory(new File(ContentDirectoryServices.mediaFolders.get(downloadTask.getMediaType())));
-        options.setSeedAfterDownloaded(false);
+        options.setSeedAfterDownloaded(seedingPolicy.isEnabled());
         options.setSequential(downloadTask.getDownloadType() == DOWNLOADTYPE.SEQUENTIAL);
-        options.setEnforceEncryption(true);
         options.setDisableUi(true);
         options.setDisableTorrentStateLogs(false);
         options.setVerboseLogging(false);
         options.setTraceLogging(false);
-        // options.setIface(null);
-        // options.setPort(BitTorrentPort);
-        // options.setDhtPort(null);
         options.setDownloadAllFiles(true);
         log.info("{}", options);
         return options;
     }
 
+    /**
+     * Prefers the durable metainfo store, then the file recorded on the task, so that the magnet URI
+     * (and with it the metadata exchange with peers) is only used when no metainfo is known yet.
+     */
+    private File resolveMetainfoFile(DownloadTask downloadTask) {
+        return metainfoStore.find(downloadTask.getTorrentHash())
+                .or(() -> Optional.ofNullable(downloadTask.getMetaInfoFile()).filter(File::isFile))
+                .orElse(null);
+    }
+
     private static String createMagnetUri(String torrentHash) {
         return "magnet:?xt=urn:btih:" + torrentHash;
     }
 
     /**
-     * Extracts torrent hash from torrent file bytes using proper Bencode parsing
-     * Returns the hash in the same format as Bt library's TorrentId.toString().toUpperCase()
+     * Writes an uploaded .torrent file straight into the metainfo store and returns its infohash
+     * and stored location. The upload is spooled to disk once and hashed from a memory mapping
+     * of that file, it is never held on the heap.
      */
-    public String extractTorrentHash(byte[] torrentFileBytes) throws Exception {
+    public StoredMetainfo storeMetainfo(MultipartFile torrentFile) throws IOException {
+        Path staging = metainfoStore.createStagingFile();
         try {
-            Bencode bencode = new Bencode();
-            Map<String, Object> torrentData = bencode.decode(torrentFileBytes, Type.DICTIONARY);
-
-            // Get the info dictionary
-            Map<String, Object> info = (Map<String, Object>) torrentData.get("info");
-            if (info == null) {
-                throw new IllegalArgumentException("Invalid torrent file: no info dictionary found");
-            }
-
-            // Encode the info dictionary back to bytes to calculate the hash
-            byte[] infoBytes = bencode.encode(info);
-
-            // Calculate SHA-1 hash of the info dictionary (this is the torrent's info hash)
-            MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
-            byte[] hash = sha1.digest(infoBytes);
-
-            // Convert to hex string in the same format as Bt library
-            StringBuilder hexString = new StringBuilder();
-            for (byte b : hash) {
-                String hex = Integer.toHexString(0xff & b);
-                if (hex.length() == 1) {
-                    hexString.append('0');
-                }
-                hexString.append(hex);
-            }
-
-            String torrentHash = hexString.toString().toUpperCase();
-            log.info("Extracted torrent hash: {}", torrentHash);
-            return torrentHash;
-
-        } catch (Exception e) {
-            log.error("Error extracting torrent hash: {}", e.getMessage(), e);
-            throw new Exception("Failed to extract torrent hash from file", e);
+            torrentFile.transferTo(staging);
+            String torrentHash = extractTorrentHash(staging);
+            return new StoredMetainfo(torrentHash, metainfoStore.commit(staging, torrentHash));
+        } finally {
+            Files.deleteIfExists(staging);
         }
     }
 
     /**
-     * Saves MultipartFile to a temporary File and returns the File object
+     * Infohash of a .torrent file in the same format as Bt's {@code TorrentId.toString().toUpperCase()}.
+     *
+     * @throws IllegalArgumentException if the file is not a valid torrent
      */
-    public File convertMultipartFileToFile(byte[] fileBytes, String fileName) throws IOException {
-        // Create a temporary file
-        Path tempFile = Files.createTempFile("torrent_", "_" + fileName);
-
-        // Write the bytes to the temporary file
-        Files.write(tempFile, fileBytes, StandardOpenOption.WRITE);
+    public String extractTorrentHash(Path torrentFile) throws IOException {
+        // mapped into a confined arena so that the file is unmapped on close and can be moved right after (Windows)
+        try (Arena arena = Arena.ofConfined();
+             FileChannel channel = FileChannel.open(torrentFile, StandardOpenOption.READ)) {
+            MemorySegment metainfo = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size(), arena);
+            String torrentHash = BencodeScanner.infoHash(metainfo.asByteBuffer());
+            log.info("Extracted torrent hash: {}", torrentHash);
+            return torrentHash;
+        }
+    }
 
-        // Return the File object
-        return tempFile.toFile();
+    public record StoredMetainfo(String torrentHash, File file) {
     }
 }
-
-
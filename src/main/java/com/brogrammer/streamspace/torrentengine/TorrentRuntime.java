@@ -0,0 +1,232 @@
+package com.brogrammer.streamspace.torrentengine;
+
+import bt.dht.DHTConfig;
+import bt.dht.DHTModule;
+import bt.module.BtModuleProvider;
+import bt.module.ServiceModule;
+import bt.net.IPeerConnectionPool;
+import bt.net.InetPeerAddress;
+import bt.net.PeerConnection;
+import bt.protocol.crypto.EncryptionPolicy;
+import bt.runtime.BtRuntime;
+import bt.runtime.BtRuntimeBuilder;
+import bt.runtime.Config;
+import com.google.inject.Module;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.security.Security;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The single Bt runtime shared by every torrent client.
+ * <p>
+ * One runtime means one listening port, one DHT node, one peer connection pool and one set of
+ * hashing threads, however many torrents are downloading or seeding.
+ * It is built on first use and shut down with the application context.
+ */
+@Slf4j
+@Component
+public class TorrentRuntime {
+
+    private final Optional<InetAddress> acceptorAddress;
+    private final Optional<Integer> port;
+    private final Optional<Integer> dhtPort;
+    private final boolean enforceEncryption;
+    private final boolean dhtEnabled;
+    private final List<InetPeerAddress> dhtRouters;
+    private final DhtNodeCache dhtNodeCache;
+    private final PeerBlocklist peerBlocklist;
+    // torrent hash -> System.nanoTime() of the last resume, until the first peer connects
+    private final Map<String, Long> awaitingFirstPeer = new ConcurrentHashMap<>();
+    private BtRuntime runtime;
+
+    public TorrentRuntime(@Value("${torrent.iface:}") String iface,
+                          @Value("${torrent.port:}") Integer port,
+                          @Value("${torrent.dht.port:}") Integer dhtPort,
+                          @Value("${torrent.enforce-encryption:true}") boolean enforceEncryption,
+                          @Value("${torrent.dht.enabled:true}") boolean dhtEnabled,
+                          @Value("${torrent.dht.routers:}") String dhtRouters,
+                          DhtNodeCache dhtNodeCache,
+                          PeerBlocklist peerBlocklist) {
+        this.acceptorAddress = parseAddress(iface);
+        this.port = validatePort(port);
+        this.dhtPort = validatePort(dhtPort);
+        this.enforceEncryption = enforceEncryption;
+        this.dhtEnabled = dhtEnabled;
+        this.dhtRouters = parseNodes(dhtRouters);
+        this.dhtNodeCache = dhtNodeCache;
+        this.peerBlocklist = peerBlocklist;
+    }
+
+    public synchronized BtRuntime runtime() {
+        if (runtime == null) {
+            runtime = build();
+        }
+        return runtime;
+    }
+
+    /**
+     * Starts the time-to-first-peer measurement for a torrent that is being (re)started.
+     */
+    void markResumed(String torrentHash) {
+        awaitingFirstPeer.put(torrentHash.toUpperCase(Locale.ROOT), System.nanoTime());
+    }
+
+    @PreDestroy
+    synchronized void shutdown() {
+        if (runtime != null) {
+            log.info("Shutting down torrent runtime");
+            runtime.shutdown();
+            runtime = null;
+        }
+    }
+
+    private BtRuntime build() {
+        configureSecurity();
+
+        Config config = new Config() {
+            @Override
+            public InetAddress getAcceptorAddress() {
+                return acceptorAddress.orElseGet(super::getAcceptorAddress);
+            }
+
+            @Override
+            public int getAcceptorPort() {
+                return port.orElseGet(super::getAcceptorPort);
+            }
+
+            @Override
+            public int getNumOfHashingThreads() {
+                return Runtime.getRuntime().availableProcessors();
+            }
+
+            @Override
+            public EncryptionPolicy getEncryptionPolicy() {
+                return enforceEncryption ? EncryptionPolicy.REQUIRE_ENCRYPTED : EncryptionPolicy.PREFER_PLAINTEXT;
+            }
+        };
+
+        BtRuntimeBuilder builder = BtRuntime.builder(config).disableAutomaticShutdown();
+        // what autoLoadModules() would add, except that the DHT module is only added when enabled
+        for (BtModuleProvider provider : ServiceLoader.load(BtModuleProvider.class)) {
+            Module module = provider.module();
+            if (!(module instanceof DHTModule)) {
+                builder.module(module);
+            }
+        }
+        if (dhtEnabled) {
+            builder.module(new DHTModule(new DHTConfig() {
+                @Override
+                public int getListeningPort() {
+                    return dhtPort.orElseGet(super::getListeningPort);
+                }
+
+                @Override
+                public boolean shouldUseRouterBootstrap() {
+                    // configured routers replace the public ones
+                    return dhtRouters.isEmpty() && super.shouldUseRouterBootstrap();
+                }
+
+                @Override
+                public Collection<InetPeerAddress> getBootstrapNodes() {
+                    // Known-good nodes from previous sessions, so that the table is not rebuilt from the routers alone
+                    List<InetPeerAddress> nodes = new ArrayList<>(dhtRouters);
+                    nodes.addAll(dhtNodeCache.bootstrapNodes());
+                    return nodes;
+                }
+            }));
+            builder.module(binder -> ServiceModule.extend(binder).addMessagingAgent(new DhtPortConsumer(dhtNodeCache, peerBlocklist)));
+        }
+        BtRuntime btRuntime = builder.build();
+
+        IPeerConnectionPool connectionPool = btRuntime.service(IPeerConnectionPool.class);
+        btRuntime.getEventSource().onPeerConnected(event -> {
+            // Bt has no pre-connect filter, so blocked peers are dropped right after the handshake,
+            // before any piece is exchanged, for incoming and outgoing connections alike
+            if (peerBlocklist.isBlocked(event.getPeer().getInetAddress())) {
+                peerBlocklist.onBlocked();
+                PeerConnection connection = connectionPool.getConnection(event.getConnectionKey());
+                if (connection != null) {
+                    connection.closeQuietly();
+                }
+                log.debug("Rejected blocked peer {}", event.getPeer());
+                return;
+            }
+            String torrentHash = event.getTorrentId().toString().toUpperCase(Locale.ROOT);
+            Long resumedAt = awaitingFirstPeer.remove(torrentHash);
+            if (resumedAt != null) {
+                log.info("Time to first peer for {}: {} ms", torrentHash,
+                        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - resumedAt));
+            }
+        });
+
+        log.info("Torrent runtime started");
+        return btRuntime;
+    }
+
+    private static Optional<Integer> validatePort(Integer port) {
+        if (port == null) {
+            return Optional.empty();
+        } else if (port < 1024 || port >= 65535) {
+            throw new IllegalArgumentException("Invalid port: " + port + "; expected 1024..65534");
+        }
+        return Optional.of(port);
+    }
+
+    /**
+     * Parses a comma-separated list of {@code host:port} DHT nodes.
+     */
+    private static List<InetPeerAddress> parseNodes(String nodes) {
+        if (nodes == null || nodes.isBlank()) {
+            return List.of();
+        }
+        return Arrays.stream(nodes.split(","))
+                .map(String::trim)
+                .filter(node -> !node.isEmpty())
+                .map(node -> {
+                    int separator = node.lastIndexOf(':');
+                    if (separator <= 0) {
+                        throw new IllegalArgumentException("Invalid DHT router: " + node + "; expected host:port");
+                    }
+                    return new InetPeerAddress(node.substring(0, separator), Integer.parseInt(node.substring(separator + 1)));
+                })
+                .toList();
+    }
+
+    private static Optional<InetAddress> parseAddress(String iface) {
+        if (iface == null || iface.isBlank()) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(InetAddress.getByName(iface));
+        } catch (UnknownHostException e) {
+            throw new IllegalArgumentException("Failed to parse the acceptor's internet address", e);
+        }
+    }
+
+    private static void configureSecurity() {
+        // Starting with JDK 8u152 this is a way to programmatically allow unlimited encryption
+        // See http://www.oracle.com/technetwork/java/javase/8u152-relnotes-3850503.html
+        String key = "crypto.policy";
+        String value = "unlimited";
+        try {
+            Security.setProperty(key, value);
+        } catch (Exception e) {
+            log.error("Failed to set security property '{}' to '{}'", key, value, e);
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.brogrammer.streamspace.upstream;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Caches the responses of an HTTP client method wrapped by {@link UpstreamCaches}.
+ * <p>
+ * A response is fresh for {@link #refreshAfterMinutes()}. After that the cached response is still served while
+ * it is reloaded in the background, until it is dropped after {@link #expireAfterMinutes()}.
+ * <p>
+ * Responses of browse methods are also kept on disk, see {@link #snapshot()}. Methods taking what a user
+ * typed turn that off, so search terms never end up on disk and do not pile up there.
+ */
+@Documented
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface CachedFor {
+
+    long refreshAfterMinutes();
+
+    long expireAfterMinutes();
+
+    /**
+     * Whether the last response per arguments is kept in the snapshot store.
+     */
+    boolean snapshot() default true;
+}
@@ -0,0 +1,244 @@
+package com.brogrammer.streamspace.upstream;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.ExecutionError;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Dynamic proxy in front of an HTTP client interface that answers {@link CachedFor} methods from one
+ * size-bounded cache per method, keyed by the arguments. Methods without the annotation go straight upstream.
+ * <p>
+ * Responses of methods with {@link CachedFor#snapshot()} are also written to the {@link SnapshotStore}.
+ * Snapshots fill the caches at startup and answer a call whose upstream fails, until upstream answers again.
+ */
+@Slf4j
+final class CachingClientProxy implements InvocationHandler {
+
+    private static final Duration RETRY_STALE_AFTER = Duration.ofMinutes(1);
+
+    private final String clientName;
+    private final Object target;
+    private final Executor backgroundExecutor;
+    private final SnapshotStore snapshots;
+    private final SingleFlights singleFlights;
+    // response -> freshness, identity keyed and collected with the response
+    private final Cache<Object, Freshness> freshness;
+    private final Map<Method, MethodCache> caches = new LinkedHashMap<>();
+    private final long maximumSize;
+
+    private CachingClientProxy(Class<?> type, Object target, Executor backgroundExecutor, long maximumSize,
+                               SnapshotStore snapshots, SingleFlights singleFlights, Cache<Object, Freshness> freshness) {
+        this.clientName = type.getSimpleName();
+        this.target = target;
+        this.backgroundExecutor = backgroundExecutor;
+        this.snapshots = snapshots;
+        this.singleFlights = singleFlights;
+        this.freshness = freshness;
+        this.maximumSize = maximumSize;
+        for (Method method : type.getMethods()) {
+            CachedFor cachedFor = method.getAnnotation(CachedFor.class);
+            if (cachedFor != null) {
+                caches.put(method, new MethodCache(method, cachedFor, maximumSize));
+            }
+        }
+    }
+
+    static <T> CachingClientProxy wrap(Class<T> type, T target, Executor backgroundExecutor, long maximumSize,
+                                       SnapshotStore snapshots, SingleFlights singleFlights, Cache<Object, Freshness> freshness) {
+        return new CachingClientProxy(type, target, backgroundExecutor, maximumSize, snapshots, singleFlights, freshness);
+    }
+
+    <T> T proxy(Class<T> type) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, this));
+    }
+
+    String clientName() {
+        return clientName;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        if (method.getDeclaringClass() == Object.class) {
+            return switch (method.getName()) {
+                case "equals" -> proxy == args[0];
+                case "hashCode" -> System.identityHashCode(proxy);
+                case "toString" -> "Caching " + target;
+                default -> method.invoke(target, args);
+            };
+        }
+        MethodCache cache = caches.get(method);
+        if (cache == null) {
+            return invokeTarget(method, args);
+        }
+        List<Object> key = args == null ? List.of() : Arrays.asList(args);
+        try {
+            // Guava already loads a key once, the flight makes the callers it shares a miss with countable
+            Response response = cache.responses.asMap().containsKey(key)
+                    ? cache.responses.get(key)
+                    : cache.flight.execute(key, () -> cache.responses.get(key));
+            if (response.offline() || response.isOlderThan(cache.refreshAfter)) {
+                // loaded from disk or kept through a failed refresh, ask upstream again now and then
+                cache.refreshStale(key);
+            }
+            return response.body();
+        } catch (ExecutionException | UncheckedExecutionException | ExecutionError e) {
+            // surface the client's own exception, e.g. a RestClientResponseException
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Hits, misses, snapshot use and upstream latency per cached method.
+     */
+    Map<String, Map<String, Object>> stats() {
+        Map<String, Map<String, Object>> stats = new LinkedHashMap<>();
+        caches.values().forEach(cache -> {
+            CacheStats cacheStats = cache.responses.stats();
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("size", cache.responses.size());
+            entry.put("hits", cacheStats.hitCount());
+            entry.put("misses", cacheStats.missCount());
+            entry.put("hitRate", cacheStats.hitRate());
+            entry.put("upstreamCalls", cacheStats.loadCount());
+            entry.put("upstreamFailures", cache.upstreamFailures.sum());
+            entry.put("upstreamAvgMillis", Duration.ofNanos((long) cacheStats.averageLoadPenalty()).toMillis());
+            entry.put("upstreamMaxMillis", Duration.ofNanos(cache.maxLoadNanos.get()).toMillis());
+            entry.put("snapshotsServed", cache.snapshotsServed.sum());
+            entry.put("evictions", cacheStats.evictionCount());
+            stats.put(cache.name, entry);
+        });
+        return stats;
+    }
+
+    /**
+     * Drops the snapshots past the age and count limits, responses evicted from the caches leave theirs behind.
+     * Methods that are not snapshot lose any left by an earlier version.
+     */
+    void pruneSnapshots() {
+        caches.values().forEach(cache -> snapshots.prune(clientName, cache.method, cache.snapshotting ? maximumSize : 0));
+    }
+
+    private Object invokeTarget(Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * A cached response, the body may be null for an empty upstream answer.
+     */
+    private record Response(Object body, Instant fetchedAt, boolean offline) {
+
+        boolean isOlderThan(Duration age) {
+            return fetchedAt.plus(age).isBefore(Instant.now());
+        }
+    }
+
+    private final class MethodCache {
+
+        private final Method method;
+        private final String name;
+        private final Duration refreshAfter;
+        private final boolean snapshotting;
+        private final LongAccumulator maxLoadNanos = new LongAccumulator(Math::max, 0);
+        private final LongAdder upstreamFailures = new LongAdder();
+        private final LongAdder snapshotsServed = new LongAdder();
+        private final LoadingCache<List<Object>, Response> responses;
+        private final SingleFlight<List<Object>, Response> flight;
+        // keys whose stale response was refreshed recently, so an outage is not retried on every call
+        private final Cache<List<Object>, Boolean> recentlyRefreshed;
+
+        private MethodCache(Method method, CachedFor cachedFor, long maximumSize) {
+            this.method = method;
+            this.name = method.getName() + "/" + method.getParameterCount();
+            this.refreshAfter = Duration.ofMinutes(cachedFor.refreshAfterMinutes());
+            this.snapshotting = cachedFor.snapshot();
+            this.flight = singleFlights.named(clientName + "." + name);
+            CacheLoader<List<Object>, Response> loader = new CacheLoader<>() {
+                @Override
+                public Response load(List<Object> key) throws Exception {
+                    return fetch(key);
+                }
+            };
+            this.responses = CacheBuilder.newBuilder()
+                    .maximumSize(maximumSize)
+                    .refreshAfterWrite(refreshAfter)
+                    .expireAfterWrite(Duration.ofMinutes(cachedFor.expireAfterMinutes()))
+                    .recordStats()
+                    // a failed background refresh keeps serving the stale response until it expires
+                    .build(CacheLoader.asyncReloading(loader, backgroundExecutor));
+            this.recentlyRefreshed = CacheBuilder.newBuilder()
+                    .expireAfterWrite(RETRY_STALE_AFTER)
+                    .build();
+
+            // Start from the last responses seen, they are refreshed on first use
+            List<SnapshotStore.Snapshot> stored = snapshots.readAll(clientName, method, snapshotting ? maximumSize : 0);
+            stored.forEach(snapshot -> responses.put(snapshot.args(), remember(new Response(snapshot.body(), snapshot.fetchedAt(), true))));
+            log.info("Caching {}.{} for {} minutes, stale for up to {} minutes, {} snapshots loaded", clientName, name,
+                    cachedFor.refreshAfterMinutes(), cachedFor.expireAfterMinutes(), stored.size());
+        }
+
+        private Response fetch(List<Object> key) throws Exception {
+            long start = System.nanoTime();
+            Object body;
+            try {
+                body = invokeTarget(method, key.toArray());
+            } catch (Throwable e) {
+                upstreamFailures.increment();
+                SnapshotStore.Snapshot snapshot = snapshotting ? snapshots.read(clientName, method, key) : null;
+                if (snapshot == null) {
+                    if (e instanceof Error error) {
+                        throw error;
+                    }
+                    throw e instanceof Exception exception ? exception : new IllegalStateException(e);
+                }
+                snapshotsServed.increment();
+                log.warn("{}.{} failed, serving the snapshot from {}: {}", clientName, name, snapshot.fetchedAt(), e.toString());
+                return remember(new Response(snapshot.body(), snapshot.fetchedAt(), true));
+            } finally {
+                maxLoadNanos.accumulate(System.nanoTime() - start);
+            }
+
+            Instant fetchedAt = Instant.now();
+            if (body != null && snapshotting) {
+                backgroundExecutor.execute(() -> snapshots.write(clientName, method, key, body, fetchedAt));
+            }
+            return remember(new Response(body, fetchedAt, false));
+        }
+
+        private void refreshStale(List<Object> key) {
+            if (recentlyRefreshed.asMap().putIfAbsent(key, Boolean.TRUE) == null) {
+                responses.refresh(key);
+            }
+        }
+
+        private Response remember(Response response) {
+            if (response.body() != null) {
+                freshness.put(response.body(), new Freshness(response.fetchedAt(), response.offline(), refreshAfter));
+            }
+            return response;
+        }
+    }
+}
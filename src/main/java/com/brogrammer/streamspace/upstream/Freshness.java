@@ -0,0 +1,48 @@
+package com.brogrammer.streamspace.upstream;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * How current an upstream response is, for the pages to tell cached data apart from live data.
+ *
+ * @param fetchedAt    when the response came from upstream
+ * @param offline      served from the disk snapshot because upstream was unreachable or not asked yet
+ * @param refreshAfter age after which the response is refreshed
+ */
+public record Freshness(Instant fetchedAt, boolean offline, Duration refreshAfter) {
+
+    public boolean isStale() {
+        return offline || Duration.between(fetchedAt, Instant.now()).compareTo(refreshAfter) > 0;
+    }
+
+    /**
+     * Age for display, e.g. "5 min ago".
+     */
+    public String getAge() {
+        Duration age = Duration.between(fetchedAt, Instant.now());
+        if (age.toMinutes() < 1) {
+            return "just now";
+        }
+        if (age.toHours() < 1) {
+            return age.toMinutes() + " min ago";
+        }
+        if (age.toDays() < 1) {
+            return age.toHours() + " h ago";
+        }
+        return age.toDays() + " d ago";
+    }
+
+    /**
+     * The least fresh of two, so a page built from several responses shows its oldest part.
+     */
+    static Freshness leastFresh(Freshness first, Freshness second) {
+        if (first == null) {
+            return second;
+        }
+        if (second == null || first.offline() != second.offline()) {
+            return second == null || first.offline() ? first : second;
+        }
+        return first.fetchedAt().isBefore(second.fetchedAt()) ? first : second;
+    }
+}
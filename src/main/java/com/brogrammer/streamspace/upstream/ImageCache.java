@@ -0,0 +1,261 @@
+package com.brogrammer.streamspace.upstream;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Downscaled copies of remote posters, kept in a size-bounded directory and evicted least recently used first.
+ * <p>
+ * The recency order lives in memory and is rebuilt from the file modification times at startup, a hit
+ * touches its file for that. Images are handed out as bytes rather than files, so evicting an image never
+ * cuts off a response serving it. Images ImageIO cannot decode (e.g. WebP) are stored as they came, images
+ * over {@code images.cache.max-pixels} are rejected before they are decoded.
+ */
+@Slf4j
+@Component
+public class ImageCache {
+
+    private final Path directory;
+    private final long maxBytes;
+    private final float jpegQuality;
+    private final long maxPixels;
+    // file name -> size, in access order
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private long totalBytes;
+
+    public ImageCache(@Value("${images.cache.directory:${user.home}/.streamspace/images}") String directory,
+                      @Value("${images.cache.max-size-mb:256}") long maxSizeMegabytes,
+                      @Value("${images.cache.jpeg-quality:0.82}") float jpegQuality,
+                      @Value("${images.cache.max-pixels:16000000}") long maxPixels) {
+        this.directory = Paths.get(directory);
+        this.maxBytes = maxSizeMegabytes * 1024 * 1024;
+        this.jpegQuality = jpegQuality;
+        this.maxPixels = maxPixels;
+        load();
+    }
+
+    /**
+     * The cached image at a width, or null if it is not cached.
+     */
+    byte[] get(String url, int width) {
+        String name = name(url, width);
+        synchronized (this) {
+            // moves it to the most recently used end
+            if (entries.get(name) == null) {
+                return null;
+            }
+        }
+        Path file = directory.resolve(name);
+        try {
+            byte[] image = Files.readAllBytes(file);
+            Files.setLastModifiedTime(file, FileTime.from(Instant.now()));
+            return image;
+        } catch (NoSuchFileException e) {
+            // evicted in the meantime or deleted from outside
+            synchronized (this) {
+                Long size = entries.remove(name);
+                if (size != null) {
+                    totalBytes -= size;
+                }
+            }
+            return null;
+        } catch (IOException e) {
+            log.debug("Failed to read cached image {}", file, e);
+            return null;
+        }
+    }
+
+    /**
+     * Scales the original down to the width, stores it and evicts the least recently used images over the limit.
+     *
+     * @return the stored image
+     * @throws IllegalArgumentException if the image has more than the maximum number of pixels
+     */
+    byte[] put(String url, int width, byte[] original) throws IOException {
+        byte[] scaled = scale(original, width);
+        String name = name(url, width);
+        Files.createDirectories(directory);
+        Path staging = Files.createTempFile(directory, name, ".tmp");
+        try {
+            Files.write(staging, scaled);
+            Files.move(staging, directory.resolve(name), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            // gone after the move, left behind only by a failed write or move
+            Files.deleteIfExists(staging);
+        }
+
+        synchronized (this) {
+            Long previous = entries.put(name, (long) scaled.length);
+            totalBytes += scaled.length - (previous == null ? 0 : previous);
+            evict();
+        }
+        return scaled;
+    }
+
+    private byte[] scale(byte[] original, int width) throws IOException {
+        BufferedImage source = decode(original, width);
+        if (source == null) {
+            // not decodable or already small enough
+            return original;
+        }
+        int height = Math.max(1, Math.round(source.getHeight() * (width / (float) source.getWidth())));
+        BufferedImage target = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = target.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            graphics.drawImage(source, 0, 0, width, height, null);
+        } finally {
+            graphics.dispose();
+        }
+
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ImageOutputStream output = ImageIO.createImageOutputStream(out)) {
+            writer.setOutput(output);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(jpegQuality);
+            writer.write(null, new IIOImage(target, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Decodes the image at no less than twice the width, or returns null if it cannot be decoded or is not wider.
+     * The size is read from the header first, so a small file of a huge image is rejected without decoding it.
+     */
+    private BufferedImage decode(byte[] original, int width) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(new ByteArrayInputStream(original))) {
+            Iterator<ImageReader> readers = input == null ? null : ImageIO.getImageReaders(input);
+            if (readers == null || !readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                int sourceWidth = reader.getWidth(0);
+                int sourceHeight = reader.getHeight(0);
+                if ((long) sourceWidth * sourceHeight > maxPixels) {
+                    throw new IllegalArgumentException("Image too large: " + sourceWidth + "x" + sourceHeight);
+                }
+                if (sourceWidth <= width) {
+                    return null;
+                }
+                ImageReadParam param = reader.getDefaultReadParam();
+                int period = Math.max(1, sourceWidth / (width * 2));
+                param.setSourceSubsampling(period, period, 0, 0);
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    private void evict() {
+        var iterator = entries.entrySet().iterator();
+        while (totalBytes > maxBytes && iterator.hasNext()) {
+            Map.Entry<String, Long> eldest = iterator.next();
+            try {
+                Files.deleteIfExists(directory.resolve(eldest.getKey()));
+            } catch (IOException e) {
+                log.warn("Failed to evict cached image {}", eldest.getKey(), e);
+                continue;
+            }
+            totalBytes -= eldest.getValue();
+            iterator.remove();
+        }
+    }
+
+    private synchronized void load() {
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        deleteStagingFiles();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.filter(file -> file.getFileName().toString().endsWith(".img"))
+                    .sorted(Comparator.comparingLong(ImageCache::lastModified))
+                    .forEach(file -> {
+                        try {
+                            long size = Files.size(file);
+                            entries.put(file.getFileName().toString(), size);
+                            totalBytes += size;
+                        } catch (IOException e) {
+                            log.debug("Skipping cached image {}", file, e);
+                        }
+                    });
+            evict();
+            log.info("Image cache holds {} images, {} MB", entries.size(), totalBytes >> 20);
+        } catch (IOException e) {
+            log.warn("Failed to read image cache {}", directory, e);
+        }
+    }
+
+    /**
+     * Deletes the staging files of writes cut off by a crash, they are not counted against the size limit.
+     */
+    private void deleteStagingFiles() {
+        try (Stream<Path> files = Files.list(directory)) {
+            files.filter(file -> file.getFileName().toString().endsWith(".tmp")).forEach(file -> {
+                try {
+                    Files.deleteIfExists(file);
+                } catch (IOException e) {
+                    log.debug("Failed to delete staging file {}", file, e);
+                }
+            });
+        } catch (IOException e) {
+            log.warn("Failed to clean up staging files in {}", directory, e);
+        }
+    }
+
+    private static long lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static String name(String url, int width) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(url.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest, 0, 16) + "-" + width + ".img";
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
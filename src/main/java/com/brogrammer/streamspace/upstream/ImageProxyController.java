@@ -0,0 +1,187 @@
+package com.brogrammer.streamspace.upstream;
+
+import com.brogrammer.streamspace.resilience.CallNotPermittedException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.client.RestClient;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URLConnection;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Serves remote posters through {@link ImageCache}, downscaled to the nearest of a few fixed widths.
+ * <p>
+ * Only images of whitelisted hosts are fetched, redirects included, so the endpoint cannot be used to reach
+ * arbitrary URLs.
+ * A cached image never changes for its URL and width, so browsers may keep it for a year.
+ */
+@Slf4j
+@Controller
+public class ImageProxyController {
+
+    private static final int[] WIDTHS = {160, 320, 640};
+    private static final int MAX_REDIRECTS = 3;
+
+    final RestClient imagesRestClient;
+    final ImageCache imageCache;
+    private final SingleFlight<String, byte[]> flight;
+    private final List<String> allowedHosts;
+    private final int maxImageBytes;
+
+    public ImageProxyController(@Qualifier("imagesRestClient") RestClient imagesRestClient,
+                                ImageCache imageCache,
+                                SingleFlights singleFlights,
+                                @Value("${images.proxy.allowed-hosts}") String[] allowedHosts,
+                                @Value("${images.proxy.max-image-kb:8192}") int maxImageKilobytes) {
+        this.imagesRestClient = imagesRestClient;
+        this.imageCache = imageCache;
+        this.flight = singleFlights.named("images");
+        this.allowedHosts = Arrays.stream(allowedHosts).map(host -> host.trim().toLowerCase(Locale.ROOT)).toList();
+        this.maxImageBytes = maxImageKilobytes * 1024;
+    }
+
+    @GetMapping("/img")
+    ResponseEntity<Resource> image(@RequestParam String url, @RequestParam(defaultValue = "320") int w) throws IOException {
+        URI uri = allowedUri(url);
+        int width = snap(w);
+
+        byte[] image = imageCache.get(url, width);
+        if (image == null) {
+            // a page of cards asks for the same poster from every device that opens it
+            image = fetchOnce(url, width, uri);
+        }
+        return ResponseEntity.ok()
+                .cacheControl(CacheControl.maxAge(Duration.ofDays(365)).cachePublic().immutable())
+                .contentType(contentType(image, uri))
+                .body(new ByteArrayResource(image));
+    }
+
+    private byte[] fetchOnce(String url, int width, URI uri) throws IOException {
+        try {
+            return flight.execute(url + "#" + width, () -> {
+                byte[] cached = imageCache.get(url, width);
+                return cached != null ? cached : imageCache.put(url, width, fetch(uri));
+            });
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_GATEWAY, e.getMessage());
+        } catch (IOException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Follows up to {@value #MAX_REDIRECTS} redirects itself, each target must be on an allowed host as well.
+     */
+    private byte[] fetch(URI uri) {
+        URI location = uri;
+        for (int hop = 0; hop <= MAX_REDIRECTS; hop++) {
+            Fetched fetched = fetchHop(location);
+            if (fetched.redirect() == null) {
+                return fetched.image();
+            }
+            URI target;
+            try {
+                target = location.resolve(fetched.redirect());
+            } catch (IllegalArgumentException e) {
+                throw new ResponseStatusException(HttpStatus.BAD_GATEWAY, "Invalid redirect from " + location, e);
+            }
+            location = allowedUri(target.toString());
+        }
+        throw new ResponseStatusException(HttpStatus.BAD_GATEWAY, "Too many redirects: " + uri);
+    }
+
+    private Fetched fetchHop(URI uri) {
+        try {
+            Fetched fetched = imagesRestClient.get()
+                    .uri(uri)
+                    .exchange((request, response) -> {
+                        if (response.getStatusCode().is3xxRedirection()) {
+                            String redirect = response.getHeaders().getFirst(HttpHeaders.LOCATION);
+                            if (redirect == null) {
+                                throw new ResponseStatusException(HttpStatus.BAD_GATEWAY, "Redirect without location: " + uri);
+                            }
+                            return new Fetched(null, redirect);
+                        }
+                        if (response.getStatusCode().isError()) {
+                            throw new ResponseStatusException(HttpStatus.BAD_GATEWAY, "Image upstream answered " + response.getStatusCode());
+                        }
+                        try (InputStream body = response.getBody()) {
+                            return new Fetched(body.readNBytes(maxImageBytes + 1), null);
+                        }
+                    });
+            if (fetched == null || (fetched.redirect() == null && (fetched.image() == null || fetched.image().length > maxImageBytes))) {
+                throw new ResponseStatusException(HttpStatus.BAD_GATEWAY, "Image too large: " + uri);
+            }
+            return fetched;
+        } catch (RestClientException | CallNotPermittedException e) {
+            log.debug("Failed to fetch image {}: {}", uri, e.getMessage());
+            throw new ResponseStatusException(HttpStatus.BAD_GATEWAY, "Failed to fetch image " + uri, e);
+        }
+    }
+
+    private record Fetched(byte[] image, String redirect) {
+    }
+
+    private URI allowedUri(String url) {
+        URI uri;
+        try {
+            uri = URI.create(url);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid image URL");
+        }
+        String scheme = uri.getScheme();
+        String host = uri.getHost();
+        if (host == null || !("https".equalsIgnoreCase(scheme) || "http".equalsIgnoreCase(scheme))) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid image URL");
+        }
+        String lowerHost = host.toLowerCase(Locale.ROOT);
+        boolean allowed = allowedHosts.stream().anyMatch(allowedHost -> lowerHost.equals(allowedHost) || lowerHost.endsWith("." + allowedHost));
+        if (!allowed) {
+            throw new ResponseStatusException(HttpStatus.FORBIDDEN, "Image host not allowed: " + host);
+        }
+        return uri;
+    }
+
+    /**
+     * The smallest fixed width at least as large as the requested one, so a few variants cover all cards.
+     */
+    private static int snap(int requested) {
+        for (int width : WIDTHS) {
+            if (requested <= width) {
+                return width;
+            }
+        }
+        return WIDTHS[WIDTHS.length - 1];
+    }
+
+    private static MediaType contentType(byte[] image, URI uri) throws IOException {
+        String sniffed = URLConnection.guessContentTypeFromStream(new ByteArrayInputStream(image));
+        if (sniffed != null) {
+            return MediaType.parseMediaType(sniffed);
+        }
+        return MediaTypeFactory.getMediaType(uri.getPath()).orElse(MediaType.APPLICATION_OCTET_STREAM);
+    }
+}
@@ -0,0 +1,27 @@
+package com.brogrammer.streamspace.upstream;
+
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Named {@link SingleFlight}s of the upstream callers, for reporting how many calls each one coalesced.
+ */
+@Component
+public class SingleFlights {
+
+    private final Map<String, SingleFlight<?, ?>> flights = new ConcurrentHashMap<>();
+
+    @SuppressWarnings("unchecked")
+    public <K, V> SingleFlight<K, V> named(String name) {
+        return (SingleFlight<K, V>) flights.computeIfAbsent(name, key -> new SingleFlight<>());
+    }
+
+    public Map<String, Map<String, Object>> stats() {
+        Map<String, Map<String, Object>> stats = new LinkedHashMap<>();
+        flights.forEach((name, flight) -> stats.put(name, flight.stats()));
+        return stats;
+    }
+}
@@ -0,0 +1,165 @@
+package com.brogrammer.streamspace.upstream;
+
+import lombok.extern.slf4j.Slf4j;
+import tools.jackson.databind.JavaType;
+import tools.jackson.databind.JsonNode;
+import tools.jackson.databind.ObjectMapper;
+import tools.jackson.databind.node.ObjectNode;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32C;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Last good response of every cached upstream call, kept on disk as one gzipped JSON file per call:
+ * {@code {"fetchedAt":<epoch millis>,"args":[...],"body":...}}.
+ * <p>
+ * Files are named after the client, the method and a checksum of the arguments, and replaced atomically,
+ * so a crash never leaves a half-written snapshot behind. Per method only the most recently written
+ * snapshots are kept, up to the cache size and no older than {@code maxAge}, see {@link #prune}.
+ */
+@Slf4j
+final class SnapshotStore {
+
+    private final Path directory;
+    private final Duration maxAge;
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    SnapshotStore(Path directory, Duration maxAge) {
+        this.directory = directory;
+        this.maxAge = maxAge;
+    }
+
+    record Snapshot(List<Object> args, Object body, Instant fetchedAt) {
+    }
+
+    void write(String client, Method method, List<Object> args, Object body, Instant fetchedAt) {
+        if (directory == null) {
+            return;
+        }
+        try {
+            Files.createDirectories(directory);
+            ObjectNode document = mapper.createObjectNode();
+            document.put("fetchedAt", fetchedAt.toEpochMilli());
+            document.set("args", mapper.valueToTree(args));
+            document.set("body", mapper.valueToTree(body));
+
+            Path file = file(client, method, args);
+            Path staging = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+            try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(staging))) {
+                mapper.writeValue(out, document);
+            }
+            Files.move(staging, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Failed to write snapshot of {}.{}", client, method.getName(), e);
+        }
+    }
+
+    Snapshot read(String client, Method method, List<Object> args) {
+        if (directory == null) {
+            return null;
+        }
+        Path file = file(client, method, args);
+        Snapshot snapshot = Files.isRegularFile(file) ? read(file, method) : null;
+        // the file name is only a checksum of the arguments
+        return snapshot != null && snapshot.args().equals(args) ? snapshot : null;
+    }
+
+    /**
+     * The snapshots of a method left after pruning, for filling its cache at startup.
+     */
+    List<Snapshot> readAll(String client, Method method, long maxCount) {
+        List<Snapshot> snapshots = new ArrayList<>();
+        for (Path file : prune(client, method, maxCount)) {
+            Snapshot snapshot = read(file, method);
+            if (snapshot != null) {
+                snapshots.add(snapshot);
+            }
+        }
+        return snapshots;
+    }
+
+    /**
+     * Deletes the snapshots of a method older than the maximum age and all but the {@code maxCount} most
+     * recently written ones.
+     *
+     * @return the remaining snapshot files, newest first
+     */
+    List<Path> prune(String client, Method method, long maxCount) {
+        List<Path> kept = new ArrayList<>();
+        if (directory == null || !Files.isDirectory(directory)) {
+            return kept;
+        }
+        List<Map.Entry<Path, Instant>> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, prefix(client, method) + "*.json.gz")) {
+            for (Path file : stream) {
+                files.add(Map.entry(file, Files.getLastModifiedTime(file).toInstant()));
+            }
+        } catch (IOException e) {
+            log.warn("Failed to list snapshots in {}", directory, e);
+            return kept;
+        }
+        files.sort(Map.Entry.<Path, Instant>comparingByValue().reversed());
+
+        Instant oldest = Instant.now().minus(maxAge);
+        for (Map.Entry<Path, Instant> file : files) {
+            if (kept.size() < maxCount && file.getValue().isAfter(oldest)) {
+                kept.add(file.getKey());
+                continue;
+            }
+            try {
+                Files.deleteIfExists(file.getKey());
+            } catch (IOException e) {
+                log.debug("Failed to delete snapshot {}", file.getKey(), e);
+            }
+        }
+        return kept;
+    }
+
+    private Snapshot read(Path file, Method method) {
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(file))) {
+            JsonNode document = mapper.readTree(in);
+            JsonNode args = document.get("args");
+            Class<?>[] parameterTypes = method.getParameterTypes();
+            if (args == null || args.size() != parameterTypes.length) {
+                return null;
+            }
+            List<Object> key = new ArrayList<>(parameterTypes.length);
+            for (int i = 0; i < parameterTypes.length; i++) {
+                key.add(mapper.treeToValue(args.get(i), parameterTypes[i]));
+            }
+            JavaType bodyType = mapper.constructType(method.getGenericReturnType());
+            Object body = mapper.treeToValue(document.get("body"), bodyType);
+            return new Snapshot(key, body, Instant.ofEpochMilli(document.get("fetchedAt").asLong()));
+        } catch (IOException | RuntimeException e) {
+            // written by an older version of the record types, the next successful call replaces it
+            log.warn("Ignoring unreadable snapshot {}: {}", file, e.getMessage());
+            return null;
+        }
+    }
+
+    private Path file(String client, Method method, List<Object> args) {
+        CRC32C checksum = new CRC32C();
+        checksum.update(mapper.writeValueAsString(args).getBytes(StandardCharsets.UTF_8));
+        return directory.resolve(prefix(client, method) + HexFormat.of().toHexDigits((int) checksum.getValue()) + ".json.gz");
+    }
+
+    private static String prefix(String client, Method method) {
+        return client + "." + method.getName() + "." + method.getParameterCount() + ".";
+    }
+}
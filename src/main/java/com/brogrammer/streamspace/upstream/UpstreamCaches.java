@@ -0,0 +1,87 @@
+package com.brogrammer.streamspace.upstream;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Response caches in front of the upstream catalog APIs.
+ * <p>
+ * Clients are wrapped once when their bean is created. Their {@link CachedFor} methods keep at most
+ * {@code upstream.cache.maximum-size} responses each and refresh stale responses on virtual threads,
+ * so a page is answered from the cache while the catalog changes underneath at its own, mostly hourly pace.
+ * <p>
+ * The last response of every call is also kept in {@code upstream.snapshot.directory}, so a restart starts
+ * warm and the pages still render, marked as offline, while an upstream is unreachable. Snapshots are pruned
+ * to the cache size and {@code upstream.snapshot.max-age-days} per method.
+ */
+@Component
+public class UpstreamCaches {
+
+    private final long maximumSize;
+    private final SnapshotStore snapshots;
+    private final SingleFlights singleFlights;
+    private final Cache<Object, Freshness> freshness = CacheBuilder.newBuilder().weakKeys().build();
+    private final List<CachingClientProxy> clients = new CopyOnWriteArrayList<>();
+    private final ExecutorService backgroundExecutor = Executors.newVirtualThreadPerTaskExecutor();
+
+    public UpstreamCaches(@Value("${upstream.cache.maximum-size:200}") long maximumSize,
+                          @Value("${upstream.snapshot.directory:}") String snapshotDirectory,
+                          @Value("${upstream.snapshot.max-age-days:30}") long snapshotMaxAgeDays,
+                          SingleFlights singleFlights) {
+        this.maximumSize = maximumSize;
+        this.singleFlights = singleFlights;
+        this.snapshots = new SnapshotStore(snapshotDirectory == null || snapshotDirectory.isBlank() ? null : Paths.get(snapshotDirectory),
+                Duration.ofDays(snapshotMaxAgeDays));
+    }
+
+    public <T> T wrap(Class<T> type, T client) {
+        CachingClientProxy handler = CachingClientProxy.wrap(type, client, backgroundExecutor, maximumSize, snapshots, singleFlights, freshness);
+        clients.add(handler);
+        return handler.proxy(type);
+    }
+
+    /**
+     * Freshness of the least fresh of the given responses of cached methods, or null if none of them is known.
+     */
+    public Freshness freshness(Object... responses) {
+        Freshness leastFresh = null;
+        for (Object response : responses) {
+            if (response != null) {
+                leastFresh = Freshness.leastFresh(leastFresh, freshness.getIfPresent(response));
+            }
+        }
+        return leastFresh;
+    }
+
+    /**
+     * Cache and upstream latency statistics per client and method.
+     */
+    public Map<String, Map<String, Map<String, Object>>> stats() {
+        Map<String, Map<String, Map<String, Object>>> stats = new LinkedHashMap<>();
+        clients.forEach(client -> stats.put(client.clientName(), client.stats()));
+        return stats;
+    }
+
+    @Scheduled(initialDelayString = "${upstream.snapshot.prune-interval-ms:3600000}", fixedDelayString = "${upstream.snapshot.prune-interval-ms:3600000}")
+    void pruneSnapshots() {
+        clients.forEach(CachingClientProxy::pruneSnapshots);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        backgroundExecutor.shutdownNow();
+    }
+}
@@ -0,0 +1,46 @@
+package com.brogrammer.streamspace.upstream;
+
+import com.brogrammer.streamspace.resilience.ResilienceRegistry;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+import java.util.Map;
+
+@Controller
+@RequestMapping("/upstream")
+@RequiredArgsConstructor
+public class UpstreamController {
+
+    final UpstreamCaches upstreamCaches;
+    final UpstreamHttpMetrics upstreamHttpMetrics;
+    final SingleFlights singleFlights;
+    final ResilienceRegistry resilienceRegistry;
+
+    @ResponseBody
+    @GetMapping(value = "/stats", produces = MediaType.APPLICATION_JSON_VALUE)
+    Map<String, Map<String, Map<String, Object>>> stats() {
+        return upstreamCaches.stats();
+    }
+
+    @ResponseBody
+    @GetMapping(value = "/latency", produces = MediaType.APPLICATION_JSON_VALUE)
+    Map<String, Map<String, Object>> latency() {
+        return upstreamHttpMetrics.snapshot();
+    }
+
+    @ResponseBody
+    @GetMapping(value = "/coalescing", produces = MediaType.APPLICATION_JSON_VALUE)
+    Map<String, Map<String, Object>> coalescing() {
+        return singleFlights.stats();
+    }
+
+    @ResponseBody
+    @GetMapping(value = "/circuits", produces = MediaType.APPLICATION_JSON_VALUE)
+    Map<String, Map<String, Object>> circuits() {
+        return resilienceRegistry.stats();
+    }
+}
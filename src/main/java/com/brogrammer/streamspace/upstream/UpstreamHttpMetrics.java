@@ -0,0 +1,98 @@
+package com.brogrammer.streamspace.upstream;
+
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency histograms of the upstream HTTP exchanges, one per host.
+ * Each bucket counts the exchanges that took up to its bound in milliseconds and more than the previous one.
+ * Percentiles are reported as the bound of the bucket they fall in.
+ */
+@Component
+public class UpstreamHttpMetrics {
+
+    private static final long[] BOUNDS_MILLIS = {25, 50, 100, 250, 500, 1000, 2500, 5000, 10000, Long.MAX_VALUE};
+
+    private final Map<String, Histogram> hosts = new ConcurrentHashMap<>();
+
+    void record(String host, long nanos, boolean failed) {
+        hosts.computeIfAbsent(host, key -> new Histogram()).record(TimeUnit.NANOSECONDS.toMillis(nanos), failed);
+    }
+
+    /**
+     * Counts, failures, percentiles and buckets per host.
+     */
+    public Map<String, Map<String, Object>> snapshot() {
+        Map<String, Map<String, Object>> snapshot = new LinkedHashMap<>();
+        hosts.forEach((host, histogram) -> snapshot.put(host, histogram.snapshot()));
+        return snapshot;
+    }
+
+    private static final class Histogram {
+
+        private final LongAdder[] buckets = new LongAdder[BOUNDS_MILLIS.length];
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder totalMillis = new LongAdder();
+
+        private Histogram() {
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        void record(long millis, boolean failed) {
+            int bucket = 0;
+            while (millis > BOUNDS_MILLIS[bucket]) {
+                bucket++;
+            }
+            buckets[bucket].increment();
+            totalMillis.add(millis);
+            if (failed) {
+                failures.increment();
+            }
+        }
+
+        Map<String, Object> snapshot() {
+            long[] counts = new long[buckets.length];
+            long count = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                counts[i] = buckets[i].sum();
+                count += counts[i];
+            }
+            Map<String, Long> histogram = new LinkedHashMap<>();
+            for (int i = 0; i < counts.length; i++) {
+                histogram.put(BOUNDS_MILLIS[i] == Long.MAX_VALUE ? "+Inf" : "<=" + BOUNDS_MILLIS[i] + "ms", counts[i]);
+            }
+
+            Map<String, Object> snapshot = new LinkedHashMap<>();
+            snapshot.put("count", count);
+            snapshot.put("failures", failures.sum());
+            snapshot.put("avgMillis", count == 0 ? 0 : totalMillis.sum() / count);
+            snapshot.put("p50", percentile(counts, count, 0.50));
+            snapshot.put("p95", percentile(counts, count, 0.95));
+            snapshot.put("p99", percentile(counts, count, 0.99));
+            snapshot.put("buckets", histogram);
+            return snapshot;
+        }
+
+        private static String percentile(long[] counts, long count, double quantile) {
+            if (count == 0) {
+                return "-";
+            }
+            long rank = (long) Math.ceil(quantile * count);
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return BOUNDS_MILLIS[i] == Long.MAX_VALUE ? ">10000ms" : "<=" + BOUNDS_MILLIS[i] + "ms";
+                }
+            }
+            return "-";
+        }
+    }
+}
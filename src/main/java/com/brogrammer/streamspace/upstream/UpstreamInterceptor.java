@@ -0,0 +1,144 @@
+package com.brogrammer.streamspace.upstream;
+
+import com.brogrammer.streamspace.resilience.Bulkhead;
+import com.brogrammer.streamspace.resilience.CircuitBreaker;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Wraps every exchange with one upstream:
+ * <ul>
+ *     <li>while the {@link CircuitBreaker} of the upstream is open, exchanges fail fast without being made;
+ *     connection failures and 5xx responses count as failures,</li>
+ *     <li>the {@link Bulkhead} of the upstream bounds the exchanges in flight, a caller waits for a slot no longer
+ *     than the read timeout and then fails fast instead of piling up behind a slow upstream,</li>
+ *     <li>responses are requested gzip-compressed and decoded, the JDK client does not do that by itself,</li>
+ *     <li>the time until the body is closed is recorded in {@link UpstreamHttpMetrics}.</li>
+ * </ul>
+ */
+public class UpstreamInterceptor implements ClientHttpRequestInterceptor {
+
+    private final CircuitBreaker circuitBreaker;
+    private final Bulkhead bulkhead;
+    private final UpstreamHttpMetrics metrics;
+
+    public UpstreamInterceptor(CircuitBreaker circuitBreaker, Bulkhead bulkhead, UpstreamHttpMetrics metrics) {
+        this.circuitBreaker = circuitBreaker;
+        this.bulkhead = bulkhead;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public ClientHttpResponse intercept(HttpRequest request, byte[] body, ClientHttpRequestExecution execution) throws IOException {
+        boolean trial = circuitBreaker.acquirePermission();
+        try {
+            bulkhead.acquire();
+        } catch (RuntimeException e) {
+            circuitBreaker.releasePermission(trial);
+            throw e;
+        }
+
+        String host = request.getURI().getHost();
+        long start = System.nanoTime();
+        try {
+            request.getHeaders().set(HttpHeaders.ACCEPT_ENCODING, "gzip");
+            return new UpstreamResponse(execution.execute(request, body), host, start, trial);
+        } catch (IOException | RuntimeException e) {
+            bulkhead.release();
+            circuitBreaker.onFailure(trial);
+            metrics.record(host, System.nanoTime() - start, true);
+            throw e;
+        }
+    }
+
+    private final class UpstreamResponse implements ClientHttpResponse {
+
+        private final ClientHttpResponse delegate;
+        private final String host;
+        private final long start;
+        private final boolean trial;
+        private final boolean gzip;
+        private final HttpHeaders headers;
+        private final AtomicBoolean closed = new AtomicBoolean();
+        private InputStream body;
+
+        private UpstreamResponse(ClientHttpResponse delegate, String host, long start, boolean trial) {
+            this.delegate = delegate;
+            this.host = host;
+            this.start = start;
+            this.trial = trial;
+            this.gzip = "gzip".equalsIgnoreCase(delegate.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+            if (gzip) {
+                // the decoded body has neither the encoding nor the length of the one on the wire
+                HttpHeaders decoded = new HttpHeaders();
+                decoded.putAll(delegate.getHeaders());
+                decoded.remove(HttpHeaders.CONTENT_ENCODING);
+                decoded.remove(HttpHeaders.CONTENT_LENGTH);
+                this.headers = HttpHeaders.readOnlyHttpHeaders(decoded);
+            } else {
+                this.headers = delegate.getHeaders();
+            }
+        }
+
+        @Override
+        public HttpStatusCode getStatusCode() throws IOException {
+            return delegate.getStatusCode();
+        }
+
+        @Override
+        public String getStatusText() throws IOException {
+            return delegate.getStatusText();
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return headers;
+        }
+
+        @Override
+        public InputStream getBody() throws IOException {
+            if (body == null) {
+                body = gzip ? new GZIPInputStream(delegate.getBody()) : delegate.getBody();
+            }
+            return body;
+        }
+
+        @Override
+        public void close() {
+            if (!closed.compareAndSet(false, true)) {
+                return;
+            }
+            boolean failed;
+            boolean upstreamFailed;
+            try {
+                HttpStatusCode status = delegate.getStatusCode();
+                failed = status.isError();
+                // a 4xx is an answer about the request, not a sign the upstream is down
+                upstreamFailed = status.is5xxServerError();
+            } catch (IOException e) {
+                failed = true;
+                upstreamFailed = true;
+            }
+            try {
+                delegate.close();
+            } finally {
+                bulkhead.release();
+                if (upstreamFailed) {
+                    circuitBreaker.onFailure(trial);
+                } else {
+                    circuitBreaker.onSuccess(trial);
+                }
+                metrics.record(host, System.nanoTime() - start, failed);
+            }
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.brogrammer.streamspace.www;
 
+import com.brogrammer.streamspace.upstream.CachedFor;
 import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.service.annotation.GetExchange;
@@ -10,21 +11,27 @@ public interface APIBayClient {
 
     //@GetExchange("https://apibay.org/q.php?q=FLAC 2023&&cat=101")
     @GetExchange("q.php?q=FLAC&&cat=101")
+    @CachedFor(refreshAfterMinutes = 60, expireAfterMinutes = 360)
     APIBayTorrent[] getLosslessFLACAudio();
 
     @GetExchange("q.php?q=ALAC&&cat=101")
+    @CachedFor(refreshAfterMinutes = 60, expireAfterMinutes = 360)
     APIBayTorrent[] getLosslessALACAudio();
 
     @GetExchange("q.php?q=Hi-Res&&cat=101")
+    @CachedFor(refreshAfterMinutes = 60, expireAfterMinutes = 360)
     APIBayTorrent[] getHiResAudio();
 
     @GetExchange("q.php?q={term}&&cat=101")
+    @CachedFor(refreshAfterMinutes = 10, expireAfterMinutes = 60, snapshot = false)
     APIBayTorrent[] searchMusic(@PathVariable String term);
 
     @GetExchange("q.php?q={term}&&cat=207")
+    @CachedFor(refreshAfterMinutes = 10, expireAfterMinutes = 60, snapshot = false)
     APIBayTorrent[] getHDMovies(@PathVariable String term);
 
     @GetExchange("q.php?q={term}&&cat=208")
+    @CachedFor(refreshAfterMinutes = 10, expireAfterMinutes = 60, snapshot = false)
     APIBayTorrent[] getHDTVShows(@PathVariable String term);
 
     record APIBayTorrent(String id,
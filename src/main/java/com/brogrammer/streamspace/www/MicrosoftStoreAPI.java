@@ -1,5 +1,6 @@
 package com.brogrammer.streamspace.www;
 
+import com.brogrammer.streamspace.upstream.CachedFor;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.service.annotation.GetExchange;
@@ -16,6 +17,7 @@ public interface MicrosoftStoreAPI {
      */
 
     @GetExchange("video.newreleases.movies&pgNo={pgNo}&noItems={noItems}&mediaType={mediaType}&filteredCategories={filteredCategories}&studioFilter=")
+    @CachedFor(refreshAfterMinutes = 60, expireAfterMinutes = 360)
     MicrosoftStoreRecord newReleases(@PathVariable(value = "pgNo") int pgNo,
                                      @PathVariable(value = "noItems") int noItems,
                                      @PathVariable(value = "mediaType") String mediaType,
@@ -44,24 +46,28 @@ public interface MicrosoftStoreAPI {
     // MicrosoftStoreRecord newTopComedy();
 
     @GetExchange("video.toprated.movies&pgNo={pgNo}&noItems={noItems}&mediaType={mediaType}&filteredCategories={filteredCategories}&studioFilter=")
+    @CachedFor(refreshAfterMinutes = 60, expireAfterMinutes = 360)
     MicrosoftStoreRecord topRated(@PathVariable(value = "pgNo") int pgNo,
                                   @PathVariable(value = "noItems") int noItems,
                                   @PathVariable(value = "mediaType") String mediaType,
                                   @PathVariable(value = "filteredCategories") String filteredCategories);
 
     @GetExchange("video.topselling.movies&pgNo={pgNo}&noItems={noItems}&mediaType={mediaType}&filteredCategories={filteredCategories}&studioFilter=")
+    @CachedFor(refreshAfterMinutes = 60, expireAfterMinutes = 360)
     MicrosoftStoreRecord topSelling(@PathVariable(value = "pgNo") int pgNo,
                                     @PathVariable(value = "noItems") int noItems,
                                     @PathVariable(value = "mediaType") String mediaType,
                                     @PathVariable(value = "filteredCategories") String filteredCategories);
 
     @GetExchange("video.toprented.movies&pgNo={pgNo}&noItems={noItems}&mediaType={mediaType}&filteredCategories={filteredCategories}&studioFilter=")
+    @CachedFor(refreshAfterMinutes = 60, expireAfterMinutes = 360)
     MicrosoftStoreRecord topRented(@PathVariable(value = "pgNo") int pgNo,
                                    @PathVariable(value = "noItems") int noItems,
                                    @PathVariable(value = "mediaType") String mediaType,
                                    @PathVariable(value = "filteredCategories") String filteredCategories);
 
     @GetExchange("video.collections.promo_marvelmovies&pgNo=1&noItems=48&mediaType=movies&filteredCategories=AllProducts")
+    @CachedFor(refreshAfterMinutes = 60, expireAfterMinutes = 360)
     MicrosoftStoreRecord MCUCollection();
 
     @JsonIgnoreProperties(ignoreUnknown = true)
@@ -1,12 +1,22 @@
 package com.brogrammer.streamspace.www;
 
+import com.brogrammer.streamspace.services.ConJob;
+import com.brogrammer.streamspace.upstream.UpstreamCaches;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+
 @Slf4j
 @Controller
 @RequestMapping("/microsoft")
@@ -14,20 +24,43 @@ import org.springframework.web.bind.annotation.RequestMapping;
 public class MicrosoftStoreController {
 
     final MicrosoftStoreAPI microsoftStoreAPI;
+    final ConJob conJob;
+    final UpstreamCaches upstreamCaches;
+
+    @Value("${microsoft.store.timeout-ms:3000}")
+    long timeoutMillis;
 
     @GetMapping("/newreleases")
     String newReleases(Model model) {
-        var productsList = microsoftStoreAPI.newReleases(1, 24, "movies", "AllProducts").productsList();
+        // The four lists are independent, fetch them together and render whichever arrived in time
+        List<MicrosoftStoreAPI.MicrosoftStoreRecord> records = conJob.executeAll(featuredCalls(microsoftStoreAPI), Duration.ofMillis(timeoutMillis)).stream()
+                .flatMap(Optional::stream)
+                .toList();
+        List<MicrosoftStoreAPI.ProductsList> productsList = new ArrayList<>();
+        records.stream()
+                .map(MicrosoftStoreAPI.MicrosoftStoreRecord::productsList)
+                .filter(Objects::nonNull)
+                .forEach(productsList::addAll);
+        model.addAttribute("freshness", upstreamCaches.freshness(records.toArray()));
         // Workaround for .active class to one of the slides,
-        model.addAttribute("activeItem", productsList.getFirst());
-        productsList.removeFirst();
-        productsList.addAll(microsoftStoreAPI.topRated(1, 24, "movies", new FilteredCategories().comedy()).productsList());
-        productsList.addAll(microsoftStoreAPI.topSelling(1, 24, "movies", "AllProducts").productsList());
-        productsList.addAll(microsoftStoreAPI.topRented(1, 24, "movies", "AllProducts").productsList());
+        if (!productsList.isEmpty()) {
+            model.addAttribute("activeItem", productsList.removeFirst());
+        }
         model.addAttribute("productsList", productsList);
         return "movies :: msftfeatured";
     }
 
+    /**
+     * The calls of the featured carousel, shared with the catalog warm-up that must use the same arguments.
+     */
+    public static List<Callable<MicrosoftStoreAPI.MicrosoftStoreRecord>> featuredCalls(MicrosoftStoreAPI microsoftStoreAPI) {
+        return List.of(
+                () -> microsoftStoreAPI.newReleases(1, 24, "movies", "AllProducts"),
+                () -> microsoftStoreAPI.topRated(1, 24, "movies", new FilteredCategories().comedy()),
+                () -> microsoftStoreAPI.topSelling(1, 24, "movies", "AllProducts"),
+                () -> microsoftStoreAPI.topRented(1, 24, "movies", "AllProducts"));
+    }
+
     record FilteredCategories(
             String actionAdv,
             String animation,
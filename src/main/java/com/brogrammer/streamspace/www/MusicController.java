@@ -1,5 +1,6 @@
 package com.brogrammer.streamspace.www;
 
+import com.brogrammer.streamspace.upstream.UpstreamCaches;
 import io.github.wimdeblauwe.htmx.spring.boot.mvc.HxRequest;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Controller;
@@ -13,11 +14,14 @@ import org.springframework.web.bind.annotation.RequestMapping;
 public class MusicController {
 
     final APIBayClient apiBayClient;
+    final UpstreamCaches upstreamCaches;
 
     @HxRequest
     @GetMapping("/featured/flac")
     String getFeaturedFLAC(Model model) {
-        model.addAttribute("music", apiBayClient.getLosslessFLACAudio());
+        APIBayClient.APIBayTorrent[] music = apiBayClient.getLosslessFLACAudio();
+        model.addAttribute("music", music);
+        model.addAttribute("freshness", upstreamCaches.freshness((Object) music));
         return "music :: featured-lossless-audio";
     }
 }
@@ -2,50 +2,92 @@ package com.brogrammer.streamspace.www;
 
 import com.brogrammer.streamspace.preferences.Preference;
 import com.brogrammer.streamspace.preferences.UserPreferences;
+import com.brogrammer.streamspace.search.FederatedSearch;
+import com.brogrammer.streamspace.search.SearchResults;
 import io.github.wimdeblauwe.htmx.spring.boot.mvc.HxRequest;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.servlet.ModelAndView;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
+/**
+ * Search across all sources, see {@link FederatedSearch}.
+ * <p>
+ * The page opens an event stream for the term and each source that answers re-renders the merged results.
+ */
+@Slf4j
 @Controller
 @RequestMapping("/search")
 @RequiredArgsConstructor
 public class SearchController {
 
-    final YTSAPIClient ytsapiClient;
+    final FederatedSearch federatedSearch;
     final UserPreferences userPreferences;
 
-    @GetMapping("/yts")
-    public String ytsSearch(@RequestParam("term") String term, Model model) {
+    @Value("${search.stream.timeout-ms:15000}")
+    long streamTimeoutMillis;
+    @Value("${search.min-term-length:2}")
+    int minTermLength;
+
+    @GetMapping
+    public String search(@RequestParam("term") String term, Model model) {
         Optional<Preference> darkModePreference = userPreferences.findById(1);
         boolean darkModeEnabled = darkModePreference.map(Preference::isEnabled).orElse(false);
         model.addAttribute("darkmodeenabled", darkModeEnabled);
-        if(term == null) {
-            return "";
-        } else {
-            model.addAttribute("results", ytsapiClient.ytsSearchV2(term).data());
-            return "index";
-        }
+        model.addAttribute("term", term);
+        return "index";
     }
 
     @HxRequest
-    @GetMapping("/yts")
-    public String ytsSearchAsync(@RequestParam("term") String term, Model model) {
-        Optional<Preference> darkModePreference = userPreferences.findById(1);
-        boolean darkModeEnabled = darkModePreference.map(Preference::isEnabled).orElse(false);
-        model.addAttribute("darkmodeenabled", darkModeEnabled);
-        if(term == null) {
-            return "";
-        } else {
-            model.addAttribute("results", ytsapiClient.ytsSearchV2(term).data());
-            //model.addAttribute("musicResults", apiBayClient.searchMusic(term));
-            return "index :: search-results";
+    @GetMapping
+    public String searchAsync(@RequestParam("term") String term, Model model) {
+        if (term.strip().length() < minTermLength) {
+            return "search :: empty";
         }
+        model.addAttribute("term", term);
+        return "search :: searchStream";
     }
 
+    @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter stream(@RequestParam("term") String term) {
+        SseEmitter emitter = new SseEmitter(streamTimeoutMillis);
+        if (term.strip().length() < minTermLength) {
+            // ends the stream with an empty result, the page would reconnect after a plain close
+            send(emitter, new SearchResults(List.of(), List.of()));
+            return emitter;
+        }
+        Runnable cancel = federatedSearch.search(term, results -> send(emitter, results));
+        // the page was left, searched again or took too long, the sources still running are not needed any more
+        emitter.onCompletion(cancel);
+        emitter.onTimeout(cancel);
+        emitter.onError(error -> cancel.run());
+        return emitter;
+    }
+
+    private static void send(SseEmitter emitter, SearchResults results) {
+        try {
+            emitter.send(SseEmitter.event()
+                    .name("results")
+                    .data(new ModelAndView("search :: results", Map.of("hits", results.hits(), "pending", results.pending()))));
+            if (results.complete()) {
+                emitter.send(SseEmitter.event().name("done").data(""));
+                emitter.complete();
+            }
+        } catch (IOException | IllegalStateException e) {
+            // the page was left or searched again before all sources answered
+            log.debug("Search stream closed: {}", e.getMessage());
+        }
+    }
 }
@@ -1,5 +1,6 @@
 package com.brogrammer.streamspace.www;
 
+import com.brogrammer.streamspace.upstream.CachedFor;
 import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.service.annotation.GetExchange;
@@ -11,39 +12,51 @@ import java.util.List;
 public interface YTSAPIClient {
 
     @GetExchange("list_movies.json?limit=8&sort_by=download_count")
+    @CachedFor(refreshAfterMinutes = 60, expireAfterMinutes = 360)
     YTSMoviesRecord getMostWatchedMovies();
 
     @GetExchange("list_movies.json?limit=50&sort_by=download_count&page={page}")
+    @CachedFor(refreshAfterMinutes = 60, expireAfterMinutes = 360)
     YTSMoviesRecord getMostWatchedMovies(@PathVariable int page);
 
     @GetExchange("list_movies.json?sort=date_added&order_by=desc&limit=8")
+    @CachedFor(refreshAfterMinutes = 60, expireAfterMinutes = 360)
     YTSMoviesRecord getLatestMovies();
 
     @GetExchange("list_movies.json?sort=date_added&order_by=desc&limit=50&page={page}")
+    @CachedFor(refreshAfterMinutes = 60, expireAfterMinutes = 360)
     YTSMoviesRecord getLatestMovies(@PathVariable int page);
 
     @GetExchange("list_movies.json?genre=comedy&sort=date_added&limit=8")
+    @CachedFor(refreshAfterMinutes = 60, expireAfterMinutes = 360)
     YTSMoviesRecord getLatestComedyMovies();
 
     @GetExchange("list_movies.json?genre=comedy&sort=date_added&limit=50&page={page}")
+    @CachedFor(refreshAfterMinutes = 60, expireAfterMinutes = 360)
     YTSMoviesRecord getLatestComedyMovies(@PathVariable int page);
 
     @GetExchange("list_movies.json?genre=comedy&sort_by=download_count&limit=8")
+    @CachedFor(refreshAfterMinutes = 60, expireAfterMinutes = 360)
     YTSMoviesRecord getMustWatch();
 
     @GetExchange("list_movies.json?genre=comedy&sort_by=download_count&limit=50&page={page}")
+    @CachedFor(refreshAfterMinutes = 60, expireAfterMinutes = 360)
     YTSMoviesRecord getMustWatch(@PathVariable int page);
 
     @GetExchange("list_movies.json?minimum_rating=7&limit=8")
+    @CachedFor(refreshAfterMinutes = 60, expireAfterMinutes = 360)
     YTSMoviesRecord getIMDBHighestRated();
 
     @GetExchange("list_movies.json?minimum_rating=7&limit=50&page={page}")
+    @CachedFor(refreshAfterMinutes = 60, expireAfterMinutes = 360)
     YTSMoviesRecord getIMDBHighestRated(@PathVariable int page);
 
     @GetExchange("list_movies.json?sort_by=like_count&order_by=desc&limit=8")
+    @CachedFor(refreshAfterMinutes = 60, expireAfterMinutes = 360)
     YTSMoviesRecord getMostLiked();
 
     @GetExchange("list_movies.json?sort_by=like_count&order_by=desc&limit=50&page={page}")
+    @CachedFor(refreshAfterMinutes = 60, expireAfterMinutes = 360)
     YTSMoviesRecord getMostLiked(@PathVariable int page);
 
     /**
@@ -51,12 +64,15 @@ public interface YTSAPIClient {
      * https://yts.bz/api/v2/movie_details.json?movie_id=36846&with_images=true&with_cast=true
      */
     @GetExchange("movie_details.json?movie_id={id}")
+    @CachedFor(refreshAfterMinutes = 360, expireAfterMinutes = 1440)
     YTSMovieRecord getMovieDetails(@PathVariable int id);
 
     @GetExchange("movie_suggestions.json?movie_id={id}")
+    @CachedFor(refreshAfterMinutes = 360, expireAfterMinutes = 1440)
     YTSMoviesRecord getSuggestedMovies(@PathVariable int id);
 
     @GetExchange("list_movies.json?query_term={term}")
+    @CachedFor(refreshAfterMinutes = 10, expireAfterMinutes = 60, snapshot = false)
     YTSMoviesRecord ytsSearchV2(@PathVariable String term);
 
     record YTSMovieRecord(String status, String status_message, YTSMovieData data) {
@@ -1,16 +1,26 @@
 package com.brogrammer.streamspace.www;
 
+import com.brogrammer.streamspace.resilience.RetryService;
+import com.brogrammer.streamspace.services.ConJob;
+import com.brogrammer.streamspace.upstream.UpstreamCaches;
 import io.github.wimdeblauwe.htmx.spring.boot.mvc.HxRequest;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.server.ResponseStatusException;
 
+import java.time.Duration;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Callable;
 import java.util.function.Function;
 
 @Slf4j
@@ -20,13 +30,20 @@ import java.util.function.Function;
 public class YTSMoviesController {
 
     final YTSAPIClient ytsapiClient;
+    final ConJob conJob;
+    final UpstreamCaches upstreamCaches;
+    final RetryService retryService;
+
+    @Value("${yts.overview.timeout-ms:5000}")
+    long timeoutMillis;
+    @Value("${yts.overview.warm-suggestions:8}")
+    int warmSuggestions;
 
     @HxRequest
     @GetMapping("/movies/{id}")
     String getNewOverview(@PathVariable("id") int id, Model model) {
 
-        model.addAttribute("ytsMovieRecord", ytsapiClient.getMovieDetails(id));
-        model.addAttribute("ytsSuggestedRecord", ytsapiClient.getSuggestedMovies(id));
+        addOverview(id, model);
 
         return "ytsMovie :: ytsMovieOverview";
     }
@@ -34,12 +51,52 @@ public class YTSMoviesController {
     @GetMapping("/movies/{id}")
     String getYTSMovieOverview(@PathVariable("id") int id, Model model) {
 
-        model.addAttribute("ytsMovieRecord", ytsapiClient.getMovieDetails(id));
-        model.addAttribute("ytsSuggestedRecord", ytsapiClient.getSuggestedMovies(id));
+        addOverview(id, model);
 
         return "ytsMovie";
     }
 
+    /**
+     * Details and suggestions are fetched together, both come from the response cache of {@link YTSAPIClient}
+     * when the title was seen recently. The page renders without suggestions if only those fail.
+     */
+    private void addOverview(int id, Model model) {
+        List<Callable<Object>> calls = List.of(
+                () -> ytsapiClient.getMovieDetails(id),
+                () -> ytsapiClient.getSuggestedMovies(id));
+        List<Optional<Object>> results = conJob.executeAll(calls, Duration.ofMillis(timeoutMillis));
+
+        YTSAPIClient.YTSMovieRecord details = (YTSAPIClient.YTSMovieRecord) results.get(0)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.BAD_GATEWAY, "YTS did not return movie " + id));
+        YTSAPIClient.YTSMoviesRecord suggestions = (YTSAPIClient.YTSMoviesRecord) results.get(1).orElse(null);
+
+        model.addAttribute("ytsMovieRecord", details);
+        model.addAttribute("ytsSuggestedRecord", suggestions);
+        warmSuggested(suggestions);
+    }
+
+    /**
+     * Loads the overviews the suggestions link to in the background, so clicking through them hits the cache.
+     */
+    private void warmSuggested(YTSAPIClient.YTSMoviesRecord suggestions) {
+        if (suggestions == null || suggestions.data() == null || suggestions.data().movies() == null) {
+            return;
+        }
+        suggestions.data().movies().stream()
+                .map(YTSAPIClient.YTSMovieDetails::id)
+                .limit(warmSuggestions)
+                // retried in the background, backing off without holding a thread
+                .forEach(suggestedId -> retryService.retryAsync(() -> {
+                            int movieId = Integer.parseInt(suggestedId);
+                            ytsapiClient.getMovieDetails(movieId);
+                            return ytsapiClient.getSuggestedMovies(movieId);
+                        })
+                        .exceptionally(e -> {
+                            log.debug("Could not warm suggested movie {}: {}", suggestedId, e.toString());
+                            return null;
+                        }));
+    }
+
     @GetMapping("/movies/cat/{category}")
     String viewAllPage(Model model,
                                     @RequestParam(defaultValue = "1") int page,
@@ -47,7 +104,19 @@ public class YTSMoviesController {
 
         model.addAttribute("category", category);
 
-        Map<String, Function<Integer, YTSAPIClient.YTSMoviesRecord>> categoryMap = Map.of(
+        YTSAPIClient.YTSMoviesRecord ytsMoviesRecord = categories(ytsapiClient).get(category).apply(page);
+        model.addAttribute("ytsMoviesRecord", ytsMoviesRecord);
+        model.addAttribute("freshness", upstreamCaches.freshness(ytsMoviesRecord));
+        model.addAttribute("currentPage", page);
+
+        return "viewAll :: gallery";
+    }
+
+    /**
+     * The page of each view-all category by its name, shared with the catalog warm-up.
+     */
+    public static Map<String, Function<Integer, YTSAPIClient.YTSMoviesRecord>> categories(YTSAPIClient ytsapiClient) {
+        return Map.of(
                 "latest", ytsapiClient::getLatestMovies,
                 "mostliked", ytsapiClient::getMostLiked,
                 "imdbrating", ytsapiClient::getIMDBHighestRated,
@@ -55,17 +124,14 @@ public class YTSMoviesController {
                 "latestcomedies", ytsapiClient::getLatestComedyMovies,
                 "mustwatch", ytsapiClient::getMustWatch
         );
-
-        model.addAttribute("ytsMoviesRecord", categoryMap.get(category).apply(page));
-        model.addAttribute("currentPage", page);
-
-        return "viewAll :: gallery";
     }
 
     @HxRequest
     @GetMapping("/ytsMostWatched")
     String ytsMostWatched(Model model) {
-        model.addAttribute("ytsMostWatchedRecord", ytsapiClient.getMostWatchedMovies());
+        YTSAPIClient.YTSMoviesRecord movies = ytsapiClient.getMostWatchedMovies();
+        model.addAttribute("ytsMostWatchedRecord", movies);
+        model.addAttribute("freshness", upstreamCaches.freshness(movies));
 
         return "movies :: ytsMostWatched";
     }
@@ -73,7 +139,9 @@ public class YTSMoviesController {
     @HxRequest
     @GetMapping("/ytsLatest")
     String ytsLatest(Model model) {
-        model.addAttribute("ytsLatestRecord", ytsapiClient.getLatestMovies());
+        YTSAPIClient.YTSMoviesRecord movies = ytsapiClient.getLatestMovies();
+        model.addAttribute("ytsLatestRecord", movies);
+        model.addAttribute("freshness", upstreamCaches.freshness(movies));
 
         return "movies :: ytsLatest";
     }
@@ -81,7 +149,9 @@ public class YTSMoviesController {
     @HxRequest
     @GetMapping("/ytsMostLiked")
     String ytsMostLiked(Model model) {
-        model.addAttribute("ytsMostLikedRecord", ytsapiClient.getMostLiked());
+        YTSAPIClient.YTSMoviesRecord movies = ytsapiClient.getMostLiked();
+        model.addAttribute("ytsMostLikedRecord", movies);
+        model.addAttribute("freshness", upstreamCaches.freshness(movies));
 
         return "movies :: ytsMostLiked";
     }
@@ -89,7 +159,9 @@ public class YTSMoviesController {
     @HxRequest
     @GetMapping("/ytsImdbRating")
     String ytsImdbRating(Model model) {
-        model.addAttribute("ytsIMDBHighestRatedRecord", ytsapiClient.getIMDBHighestRated());
+        YTSAPIClient.YTSMoviesRecord movies = ytsapiClient.getIMDBHighestRated();
+        model.addAttribute("ytsIMDBHighestRatedRecord", movies);
+        model.addAttribute("freshness", upstreamCaches.freshness(movies));
 
         return "movies :: ytsImdbRating";
     }
@@ -97,7 +169,9 @@ public class YTSMoviesController {
     @HxRequest
     @GetMapping("/ytsLatestComedies")
     String ytsLatestComedies(Model model) {
-        model.addAttribute("ytsLatestComedyRecord", ytsapiClient.getLatestComedyMovies());
+        YTSAPIClient.YTSMoviesRecord movies = ytsapiClient.getLatestComedyMovies();
+        model.addAttribute("ytsLatestComedyRecord", movies);
+        model.addAttribute("freshness", upstreamCaches.freshness(movies));
 
         return "movies :: ytsLatestComedies";
     }
@@ -106,7 +180,9 @@ public class YTSMoviesController {
     @GetMapping("/ytsMustWatch")
     String ytsMustWatch(Model model) {
 
-        model.addAttribute("ytsMustWatchRecord", ytsapiClient.getMustWatch());
+        YTSAPIClient.YTSMoviesRecord movies = ytsapiClient.getMustWatch();
+        model.addAttribute("ytsMustWatchRecord", movies);
+        model.addAttribute("freshness", upstreamCaches.freshness(movies));
 
         return "movies :: ytsMustWatch";
     }
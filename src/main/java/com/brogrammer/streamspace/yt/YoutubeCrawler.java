@@ -1,153 +1,111 @@
 package com.brogrammer.streamspace.yt;
 
 import com.brogrammer.streamspace.resilience.RetryService;
-import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.brogrammer.streamspace.upstream.SingleFlight;
+import com.brogrammer.streamspace.upstream.SingleFlights;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import lombok.extern.slf4j.Slf4j;
-import org.jsoup.Jsoup;
-import org.jsoup.nodes.Document;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import tools.jackson.databind.JsonNode;
-import tools.jackson.databind.ObjectMapper;
+import org.springframework.web.client.RestClient;
+import org.springframework.web.client.RestClientResponseException;
 
-import java.util.ArrayList;
+import java.io.InputStream;
+import java.text.Normalizer;
+import java.time.Duration;
 import java.util.List;
-import java.util.Objects;
-import java.util.regex.Matcher;
+import java.util.Locale;
 import java.util.regex.Pattern;
-import java.util.stream.Collectors;
 
+/**
+ * Finds trailers and videos by scraping the YouTube search results page, see {@link YtInitialDataParser}.
+ * <p>
+ * Results are cached by normalized query, so "The Matrix", "the matrix " and "The Matrix!" share one crawl.
+ * Failed crawls are not cached.
+ */
 @Slf4j
 @Service
 public class YoutubeCrawler {
 
-    private static final Pattern POLYMER_INITIAL_DATA_REGEX = Pattern.compile("(window\\[\"ytInitialData\"]|var ytInitialData)\\s*=\\s*(.*);");
-    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final Pattern NON_ALPHANUMERIC = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    // shares the upstream HTTP client, timeouts and latency metrics of the API clients
+    final RestClient youtubeRestClient;
+    final RetryService retryService;
+    private final SingleFlight<String, List<YouTubeResponseDTO>> flight;
+    private final Cache<String, List<YouTubeResponseDTO>> searchResults;
+
+    public YoutubeCrawler(@Qualifier("youtubeRestClient") RestClient youtubeRestClient,
+                          RetryService retryService,
+                          SingleFlights singleFlights,
+                          @Value("${youtube.search.cache.maximum-size:1000}") long maximumSize,
+                          @Value("${youtube.search.cache.ttl-hours:24}") long ttlHours) {
+        this.youtubeRestClient = youtubeRestClient;
+        this.retryService = retryService;
+        this.flight = singleFlights.named("youtube.search");
+        this.searchResults = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(Duration.ofHours(ttlHours))
+                .build();
+    }
 
+    /**
+     * The first video found for the title, or null if there is none or YouTube could not be crawled.
+     */
     public YouTubeResponseDTO getYoutubeTrailersByTitle(String searchQuery) {
-
-        Content content = crawlSearchResults(searchQuery)
-                .twoColumnSearchResultsRenderer
-                .primaryContents
-                .sectionListRenderer.contents.getFirst().itemSectionRenderer.contents.getFirst();
-
-        YouTubeResponseDTO youTubeResponseDTO = null;
-
-        if (content.videoRenderer != null) {
-            youTubeResponseDTO = new YouTubeResponseDTO(
-                    content.videoRenderer.title.runs.getFirst().text,
-                    content.videoRenderer.videoId,
-                    null
-            );
-        }
-
+        List<YouTubeResponseDTO> videos = search(searchQuery);
+        YouTubeResponseDTO youTubeResponseDTO = videos.isEmpty()
+                ? null
+                : new YouTubeResponseDTO(videos.getFirst().title(), videos.getFirst().url(), null);
         log.debug("{}", youTubeResponseDTO);
         return youTubeResponseDTO;
     }
 
     public List<YouTubeResponseDTO> getVideos(String searchQuery) {
-        Content content = crawlSearchResults(searchQuery);
-
-        List<Content> contentList = new ArrayList<>(
-                content
-                        .twoColumnSearchResultsRenderer
-                        .primaryContents
-                        .sectionListRenderer
-                        .contents.getFirst().itemSectionRenderer.contents
-        );
-
-        return contentList.stream()
-        .filter(content1 -> content1.videoRenderer() != null)
-        .map(content1 -> new YouTubeResponseDTO(
-                content1.videoRenderer().title().runs().getFirst().text,
-                content1.videoRenderer().videoId,
-                content1.videoRenderer().thumbnail.thumbnails.getFirst().url))
-        .collect(Collectors.toList());
+        return search(searchQuery);
     }
 
-    private Content crawlSearchResults(String searchQuery) {
-        RetryService<Content> retryService = new RetryService<>();
-
-        return retryService.retry(() -> {
-            Document document = Jsoup.connect("https://www.youtube.com/results?search_query=" + searchQuery + " trailer")
-                    .get();
-
-            // document.getElementsByTag("a").forEach(System.out::println); // This will get all links in the document
-            // Match the JSON from the HTML. It should be within a script tag
-            // String matcher0 = matcher.group(0);
-            // String matcher1 = matcher.group(1);
-            // String matcher2 = matcher.group(2);
-            Matcher matcher = POLYMER_INITIAL_DATA_REGEX.matcher(document.html());
-            if (!matcher.find()) {
-                log.warn("Failed to match ytInitialData JSON object");
-            }
-
-            JsonNode jsonNode = OBJECT_MAPPER.readTree(matcher.group(2));
-            JsonNode contents = jsonNode.get("contents");
-            return Objects.requireNonNull(OBJECT_MAPPER.treeToValue(contents, Content.class));
-        });
-    }
-
-    @JsonIgnoreProperties(ignoreUnknown = true)
-    record Content(
-            ItemSectionRenderer itemSectionRenderer,
-            VideoRenderer videoRenderer,
-            TwoColumnSearchResultsRenderer twoColumnSearchResultsRenderer
-    ) {
-    }
-
-    @JsonIgnoreProperties(ignoreUnknown = true)
-    record ItemSectionRenderer(
-            ArrayList<Content> contents
-    ) {
-    }
-
-    @JsonIgnoreProperties(ignoreUnknown = true)
-    record VideoRenderer(
-            String videoId,
-            Title title,
-            Thumbnail thumbnail
-    ) {
-    }
-
-    @JsonIgnoreProperties(ignoreUnknown = true)
-    record Thumbnail(
-            ArrayList<Thumbnails> thumbnails
-    ){}
-
-    @JsonIgnoreProperties(ignoreUnknown = true)
-    record Thumbnails(
-            String url,
-            String width,
-            String height
-    ){}
-
-    @JsonIgnoreProperties(ignoreUnknown = true)
-    record TwoColumnSearchResultsRenderer(
-            PrimaryContents primaryContents
-    ) {
-    }
-
-    @JsonIgnoreProperties(ignoreUnknown = true)
-    record PrimaryContents(
-            SectionListRenderer sectionListRenderer
-    ) {
-    }
-
-    @JsonIgnoreProperties(ignoreUnknown = true)
-    record SectionListRenderer(
-            ArrayList<Content> contents
-    ) {
+    /**
+     * The search results, or empty if YouTube could not be crawled, which fails fast while its circuit is open.
+     */
+    private List<YouTubeResponseDTO> search(String searchQuery) {
+        String key = normalize(searchQuery);
+        List<YouTubeResponseDTO> cached = searchResults.getIfPresent(key);
+        if (cached != null) {
+            return cached;
+        }
+        try {
+            // Devices opening the same title at once share one crawl
+            return flight.execute(key, () -> {
+                List<YouTubeResponseDTO> videos = crawl(key);
+                searchResults.put(key, videos);
+                return videos;
+            });
+        } catch (Exception e) {
+            log.warn("Crawling YouTube for '{}' failed: {}", searchQuery, e.toString());
+            return List.of();
+        }
     }
 
-    @JsonIgnoreProperties(ignoreUnknown = true)
-    record Title(
-            ArrayList<Run> runs
-    ) {
+    private List<YouTubeResponseDTO> crawl(String query) throws Exception {
+        return retryService.retry(() -> youtubeRestClient.get()
+                .uri("https://www.youtube.com/results?search_query={query}", query + " trailer")
+                .exchange((request, response) -> {
+                    if (response.getStatusCode().isError()) {
+                        // carries the status and Retry-After, so the retry knows whether and when to try again
+                        throw new RestClientResponseException("YouTube answered " + response.getStatusCode(),
+                                response.getStatusCode(), response.getStatusText(), response.getHeaders(), null, null);
+                    }
+                    try (InputStream page = response.getBody()) {
+                        return List.copyOf(YtInitialDataParser.searchResults(page));
+                    }
+                }));
     }
 
-    @JsonIgnoreProperties(ignoreUnknown = true)
-    record Run(
-            String text
-    ) {
+    static String normalize(String query) {
+        String folded = Normalizer.normalize(query, Normalizer.Form.NFKC).toLowerCase(Locale.ROOT);
+        return NON_ALPHANUMERIC.matcher(folded).replaceAll(" ").trim();
     }
 }
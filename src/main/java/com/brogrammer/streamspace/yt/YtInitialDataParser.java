@@ -0,0 +1,184 @@
+package com.brogrammer.streamspace.yt;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import tools.jackson.core.JsonParser;
+import tools.jackson.core.JsonToken;
+import tools.jackson.databind.ObjectMapper;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PushbackReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads the videos of a YouTube search results page while it streams in.
+ * <p>
+ * The page is about a megabyte, mostly scripts. The results are in the {@code ytInitialData} object assigned in
+ * one of them, so the page is scanned for that assignment without being kept, and the object is read with a
+ * streaming parser along {@code contents.twoColumnSearchResultsRenderer.primaryContents.sectionListRenderer}
+ * up to the end of the first item section. Only the {@code videoRenderer}s found there are bound, everything
+ * else is skipped, and the rest of the page is never read.
+ */
+final class YtInitialDataParser {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final String MARKER = "ytInitialData";
+
+    private YtInitialDataParser() {
+    }
+
+    /**
+     * @return the videos of the first item section in page order
+     * @throws IllegalStateException if the page has no {@code ytInitialData}
+     */
+    static List<YouTubeResponseDTO> searchResults(InputStream page) throws IOException {
+        PushbackReader reader = new PushbackReader(new BufferedReader(new InputStreamReader(page, StandardCharsets.UTF_8), 16 * 1024));
+        if (!skipToInitialData(reader)) {
+            throw new IllegalStateException("Failed to find ytInitialData");
+        }
+        try (JsonParser parser = OBJECT_MAPPER.createParser(reader)) {
+            return videos(parser);
+        }
+    }
+
+    /**
+     * Reads up to the {@code {} of {@code var ytInitialData = {} or {@code window["ytInitialData"] = {},
+     * which is pushed back for the parser.
+     */
+    private static boolean skipToInitialData(PushbackReader reader) throws IOException {
+        int matched = 0;
+        int c;
+        while ((c = reader.read()) != -1) {
+            if (c == MARKER.charAt(matched)) {
+                if (++matched < MARKER.length()) {
+                    continue;
+                }
+                matched = 0;
+                c = skipAssignment(reader);
+                if (c == '{') {
+                    reader.unread(c);
+                    return true;
+                }
+            } else {
+                // the marker starts with a character it does not repeat, so a mismatch can only restart it
+                matched = c == MARKER.charAt(0) ? 1 : 0;
+            }
+        }
+        return false;
+    }
+
+    // the first character after `"] = ` or ` = `, or whatever broke that pattern
+    private static int skipAssignment(Reader reader) throws IOException {
+        boolean assigned = false;
+        int c;
+        while ((c = reader.read()) != -1) {
+            if (c == '=' && !assigned) {
+                assigned = true;
+            } else if (!(Character.isWhitespace(c) || (!assigned && (c == '"' || c == ']')))) {
+                return assigned ? c : -1;
+            }
+        }
+        return -1;
+    }
+
+    private static List<YouTubeResponseDTO> videos(JsonParser parser) {
+        List<YouTubeResponseDTO> videos = new ArrayList<>();
+        parser.nextToken();
+        if (!(property(parser, "contents")
+                && property(parser, "twoColumnSearchResultsRenderer")
+                && property(parser, "primaryContents")
+                && property(parser, "sectionListRenderer")
+                && property(parser, "contents")
+                && parser.currentToken() == JsonToken.START_ARRAY)) {
+            return videos;
+        }
+        while (parser.nextToken() == JsonToken.START_OBJECT) {
+            if (property(parser, "itemSectionRenderer")) {
+                if (property(parser, "contents") && parser.currentToken() == JsonToken.START_ARRAY) {
+                    readItems(parser, videos);
+                }
+                // the results are in the first item section, later ones are ads and shelves
+                return videos;
+            }
+        }
+        return videos;
+    }
+
+    private static void readItems(JsonParser parser, List<YouTubeResponseDTO> videos) {
+        while (parser.nextToken() == JsonToken.START_OBJECT) {
+            if (!property(parser, "videoRenderer")) {
+                continue;
+            }
+            if (parser.currentToken() == JsonToken.START_OBJECT) {
+                VideoRenderer video = OBJECT_MAPPER.readValue(parser, VideoRenderer.class);
+                if (video.videoId() != null) {
+                    videos.add(new YouTubeResponseDTO(video.titleText(), video.videoId(), video.thumbnailUrl()));
+                }
+            } else {
+                parser.skipChildren();
+            }
+            skipRest(parser);
+        }
+    }
+
+    /**
+     * Moves from the {@code START_OBJECT} of an object to the value of its property of the name.
+     * Otherwise leaves the parser at the end of the object and returns false.
+     */
+    private static boolean property(JsonParser parser, String name) {
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            return false;
+        }
+        while (parser.nextToken() == JsonToken.PROPERTY_NAME) {
+            boolean match = name.equals(parser.currentName());
+            parser.nextToken();
+            if (match) {
+                return true;
+            }
+            parser.skipChildren();
+        }
+        return false;
+    }
+
+    // from within an object to its end
+    private static void skipRest(JsonParser parser) {
+        while (parser.nextToken() == JsonToken.PROPERTY_NAME) {
+            parser.nextToken();
+            parser.skipChildren();
+        }
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    record VideoRenderer(String videoId, Title title, Thumbnail thumbnail) {
+
+        String titleText() {
+            return title == null || title.runs() == null || title.runs().isEmpty() ? null : title.runs().getFirst().text();
+        }
+
+        String thumbnailUrl() {
+            return thumbnail == null || thumbnail.thumbnails() == null || thumbnail.thumbnails().isEmpty()
+                    ? null : thumbnail.thumbnails().getFirst().url();
+        }
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    record Title(List<Run> runs) {
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    record Run(String text) {
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    record Thumbnail(List<Thumbnails> thumbnails) {
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    record Thumbnails(String url) {
+    }
+}
@@ -0,0 +1,32 @@
+package com.brogrammer.streamspace.resilience;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class BulkheadTest {
+
+    @Test
+    void rejectsWhenAllSlotsAreTaken() {
+        Bulkhead bulkhead = new Bulkhead("test", 2, Duration.ofMillis(10));
+        bulkhead.acquire();
+        bulkhead.acquire();
+
+        assertThatThrownBy(bulkhead::acquire).isInstanceOf(CallNotPermittedException.class);
+        assertThat(bulkhead.stats()).containsEntry("inUse", 2).containsEntry("rejected", 1L);
+    }
+
+    @Test
+    void releasedSlotCanBeTakenAgain() {
+        Bulkhead bulkhead = new Bulkhead("test", 1, Duration.ofMillis(10));
+        bulkhead.acquire();
+        bulkhead.release();
+
+        bulkhead.acquire();
+
+        assertThat(bulkhead.stats()).containsEntry("inUse", 1).containsEntry("rejected", 0L);
+    }
+}
@@ -0,0 +1,103 @@
+package com.brogrammer.streamspace.resilience;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CircuitBreakerTest {
+
+    @Test
+    void opensAfterConsecutiveFailures() {
+        CircuitBreaker circuitBreaker = new CircuitBreaker("test", 3, Duration.ofHours(1));
+
+        for (int i = 0; i < 2; i++) {
+            circuitBreaker.onFailure(circuitBreaker.acquirePermission());
+        }
+        assertThat(circuitBreaker.state()).isEqualTo(CircuitBreaker.State.CLOSED);
+
+        circuitBreaker.onFailure(circuitBreaker.acquirePermission());
+        assertThat(circuitBreaker.state()).isEqualTo(CircuitBreaker.State.OPEN);
+        assertThatThrownBy(circuitBreaker::acquirePermission).isInstanceOf(CallNotPermittedException.class);
+    }
+
+    @Test
+    void successResetsTheFailureCount() {
+        CircuitBreaker circuitBreaker = new CircuitBreaker("test", 2, Duration.ofHours(1));
+
+        circuitBreaker.onFailure(circuitBreaker.acquirePermission());
+        circuitBreaker.onSuccess(circuitBreaker.acquirePermission());
+        circuitBreaker.onFailure(circuitBreaker.acquirePermission());
+
+        assertThat(circuitBreaker.state()).isEqualTo(CircuitBreaker.State.CLOSED);
+    }
+
+    @Test
+    void trialSuccessClosesTheCircuit() {
+        CircuitBreaker circuitBreaker = openCircuit();
+
+        boolean trial = circuitBreaker.acquirePermission();
+        assertThat(trial).isTrue();
+        assertThat(circuitBreaker.state()).isEqualTo(CircuitBreaker.State.HALF_OPEN);
+
+        circuitBreaker.onSuccess(trial);
+        assertThat(circuitBreaker.state()).isEqualTo(CircuitBreaker.State.CLOSED);
+        assertThat(circuitBreaker.acquirePermission()).isFalse();
+    }
+
+    @Test
+    void trialFailureOpensTheCircuitAgain() {
+        CircuitBreaker circuitBreaker = openCircuit();
+
+        circuitBreaker.onFailure(circuitBreaker.acquirePermission());
+
+        assertThat(circuitBreaker.state()).isEqualTo(CircuitBreaker.State.OPEN);
+    }
+
+    @Test
+    void onlyOneTrialAtATime() {
+        CircuitBreaker circuitBreaker = openCircuit();
+
+        assertThat(circuitBreaker.acquirePermission()).isTrue();
+        assertThatThrownBy(circuitBreaker::acquirePermission).isInstanceOf(CallNotPermittedException.class);
+    }
+
+    @Test
+    void callsFromBeforeTheCircuitOpenedDoNotDecideIt() {
+        CircuitBreaker circuitBreaker = new CircuitBreaker("test", 1, Duration.ZERO);
+        boolean lateSuccess = circuitBreaker.acquirePermission();
+        boolean lateFailure = circuitBreaker.acquirePermission();
+        circuitBreaker.onFailure(circuitBreaker.acquirePermission());
+        boolean trial = circuitBreaker.acquirePermission();
+
+        circuitBreaker.onSuccess(lateSuccess);
+        circuitBreaker.onFailure(lateFailure);
+        assertThat(circuitBreaker.state()).isEqualTo(CircuitBreaker.State.HALF_OPEN);
+        assertThatThrownBy(circuitBreaker::acquirePermission).isInstanceOf(CallNotPermittedException.class);
+
+        circuitBreaker.onSuccess(trial);
+        assertThat(circuitBreaker.state()).isEqualTo(CircuitBreaker.State.CLOSED);
+    }
+
+    @Test
+    void releasedTrialLetsTheNextCallBeTheTrial() {
+        CircuitBreaker circuitBreaker = openCircuit();
+
+        circuitBreaker.releasePermission(circuitBreaker.acquirePermission());
+
+        assertThat(circuitBreaker.state()).isEqualTo(CircuitBreaker.State.HALF_OPEN);
+        assertThat(circuitBreaker.acquirePermission()).isTrue();
+    }
+
+    /**
+     * A circuit that has just opened and lets the trial through right away.
+     */
+    private static CircuitBreaker openCircuit() {
+        CircuitBreaker circuitBreaker = new CircuitBreaker("test", 1, Duration.ZERO);
+        circuitBreaker.onFailure(circuitBreaker.acquirePermission());
+        assertThat(circuitBreaker.state()).isEqualTo(CircuitBreaker.State.OPEN);
+        return circuitBreaker;
+    }
+}
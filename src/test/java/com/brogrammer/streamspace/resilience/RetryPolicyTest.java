@@ -0,0 +1,35 @@
+package com.brogrammer.streamspace.resilience;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class RetryPolicyTest {
+
+    private final RetryPolicy policy = new RetryPolicy(5, Duration.ofMillis(100), Duration.ofMillis(1000));
+
+    @Test
+    void backoffStaysBelowTheExponentialBound() {
+        for (int i = 0; i < 1000; i++) {
+            assertThat(policy.backoff(1)).isBetween(Duration.ZERO, Duration.ofMillis(100));
+            assertThat(policy.backoff(3)).isBetween(Duration.ZERO, Duration.ofMillis(400));
+        }
+    }
+
+    @Test
+    void backoffIsCappedAtTheMaximum() {
+        for (int i = 0; i < 1000; i++) {
+            assertThat(policy.backoff(10)).isBetween(Duration.ZERO, Duration.ofMillis(1000));
+            assertThat(policy.backoff(100)).isBetween(Duration.ZERO, Duration.ofMillis(1000));
+        }
+    }
+
+    @Test
+    void rejectsLessThanOneAttempt() {
+        assertThatThrownBy(() -> new RetryPolicy(0, Duration.ofMillis(100), Duration.ofMillis(1000)))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
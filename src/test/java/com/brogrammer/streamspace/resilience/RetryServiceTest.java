@@ -0,0 +1,88 @@
+package com.brogrammer.streamspace.resilience;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.RestClientResponseException;
+
+import java.time.Duration;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class RetryServiceTest {
+
+    private final RetryPolicy policy = new RetryPolicy(3, Duration.ofMillis(1), Duration.ofSeconds(5));
+
+    @Test
+    void retriesUntilTheCallSucceeds() throws Exception {
+        RetryService retryService = new RetryService(3, 1, 1);
+        AtomicInteger calls = new AtomicInteger();
+
+        String result = retryService.retry(() -> {
+            if (calls.incrementAndGet() < 3) {
+                throw new IllegalStateException("down");
+            }
+            return "up";
+        });
+
+        assertThat(result).isEqualTo("up");
+        assertThat(calls).hasValue(3);
+    }
+
+    @Test
+    void doesNotRetryClientErrors() {
+        RetryService retryService = new RetryService(3, 1, 1);
+        AtomicInteger calls = new AtomicInteger();
+
+        assertThatThrownBy(() -> retryService.retry(() -> {
+            calls.incrementAndGet();
+            throw response(HttpStatus.NOT_FOUND, new HttpHeaders());
+        })).isInstanceOf(RestClientResponseException.class);
+        assertThat(calls).hasValue(1);
+    }
+
+    @Test
+    void retriesTimeoutsRateLimitsAndServerErrors() {
+        assertThat(RetryService.backoff(policy, 1, response(HttpStatus.REQUEST_TIMEOUT, new HttpHeaders()))).isNotNull();
+        assertThat(RetryService.backoff(policy, 1, response(HttpStatus.TOO_MANY_REQUESTS, new HttpHeaders()))).isNotNull();
+        assertThat(RetryService.backoff(policy, 1, response(HttpStatus.BAD_GATEWAY, new HttpHeaders()))).isNotNull();
+        assertThat(RetryService.backoff(policy, 3, response(HttpStatus.BAD_GATEWAY, new HttpHeaders()))).isNull();
+    }
+
+    @Test
+    void waitsAsLongAsRetryAfterAsks() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.RETRY_AFTER, "2");
+
+        assertThat(RetryService.backoff(policy, 1, response(HttpStatus.TOO_MANY_REQUESTS, headers)))
+                .isEqualTo(Duration.ofSeconds(2));
+    }
+
+    @Test
+    void givesUpWhenRetryAfterIsLongerThanTheMaximumBackoff() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.RETRY_AFTER, "60");
+
+        assertThat(RetryService.backoff(policy, 1, response(HttpStatus.TOO_MANY_REQUESTS, headers))).isNull();
+    }
+
+    @Test
+    void parsesRetryAfterDates() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.RETRY_AFTER, DateTimeFormatter.RFC_1123_DATE_TIME.format(ZonedDateTime.now(ZoneOffset.UTC).plusMinutes(2)));
+
+        assertThat(RetryService.retryAfter(headers)).isBetween(Duration.ofSeconds(100), Duration.ofSeconds(120));
+
+        headers.set(HttpHeaders.RETRY_AFTER, "soon");
+        assertThat(RetryService.retryAfter(headers)).isNull();
+    }
+
+    private static RestClientResponseException response(HttpStatus status, HttpHeaders headers) {
+        return new RestClientResponseException(status.toString(), status, status.getReasonPhrase(), headers, null, null);
+    }
+}
@@ -0,0 +1,141 @@
+package com.brogrammer.streamspace.search;
+
+import com.brogrammer.streamspace.content.MusicRepository;
+import com.brogrammer.streamspace.content.Video;
+import com.brogrammer.streamspace.content.VideoRepository;
+import com.brogrammer.streamspace.search.SearchHit.Kind;
+import com.brogrammer.streamspace.www.APIBayClient;
+import com.brogrammer.streamspace.www.YTSAPIClient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class FederatedSearchTest {
+
+    private final YTSAPIClient ytsapiClient = mock(YTSAPIClient.class);
+    private final APIBayClient apiBayClient = mock(APIBayClient.class);
+    private final VideoRepository videoRepository = mock(VideoRepository.class);
+    private final MusicRepository musicRepository = mock(MusicRepository.class);
+    private final FederatedSearch federatedSearch = new FederatedSearch(ytsapiClient, apiBayClient, videoRepository, musicRepository,
+            1000, 1000, 1000, 40);
+
+    @AfterEach
+    void shutdown() {
+        federatedSearch.shutdown();
+    }
+
+    @Test
+    void mergesReleasesOfTheSameTitleUpToTheirYear() throws Exception {
+        when(ytsapiClient.ytsSearchV2("the matrix")).thenReturn(yts(movie("1", "The Matrix (1999)", "8.7")));
+        when(apiBayClient.getHDMovies("the matrix")).thenReturn(new APIBayClient.APIBayTorrent[]{
+                torrent("A", "The.Matrix.1999.1080p.BluRay.x264", 500),
+                torrent("B", "The Matrix 1999 2160p UHD", 50),
+                torrent("C", "The.Matrix.Reloaded.2003.1080p", 300)});
+
+        List<SearchHit> hits = search("the matrix");
+
+        assertThat(hits).extracting(SearchHit::key).containsExactly("video:the matrix 1999", "video:the matrix reloaded 2003");
+        assertThat(hits.getFirst().kind()).isEqualTo(Kind.YTS_MOVIE);
+        assertThat(hits.get(1).id()).isEqualTo("C");
+    }
+
+    @Test
+    void keepsLocalFilesWithAtLeastHalfOfTheWords() throws Exception {
+        // the repository is asked for the longest word only
+        when(videoRepository.findTop50ByNameContainingIgnoreCase("runner")).thenReturn(List.of(
+                video("Blade Runner 2049.mkv"),
+                video("Blade Runner.mkv"),
+                video("Runner Runner.mp4")));
+
+        List<SearchHit> hits = search("blade runner 2049");
+
+        assertThat(hits).extracting(SearchHit::title).containsExactly("Blade Runner 2049.mkv", "Blade Runner.mkv");
+        assertThat(hits).extracting(SearchHit::kind).containsOnly(Kind.LOCAL_VIDEO);
+    }
+
+    @Test
+    void ranksLocalFilesOverYtsOverTorrents() throws Exception {
+        when(ytsapiClient.ytsSearchV2("dune")).thenReturn(yts(movie("7", "Dune (2021)", "8.0")));
+        when(apiBayClient.getHDTVShows("dune")).thenReturn(new APIBayClient.APIBayTorrent[]{
+                torrent("D", "Dune.Prophecy.S01E01.1080p", 5000)});
+        when(videoRepository.findTop50ByNameContainingIgnoreCase("dune")).thenReturn(List.of(video("Dune Messiah.mkv")));
+
+        List<SearchHit> hits = search("dune");
+
+        assertThat(hits).extracting(SearchHit::kind).containsExactly(Kind.LOCAL_VIDEO, Kind.YTS_MOVIE, Kind.TORRENT_VIDEO);
+        assertThat(hits).isSortedAccordingTo((a, b) -> Double.compare(b.score(), a.score()));
+    }
+
+    @Test
+    void ranksBetterMatchingTitlesFirst() throws Exception {
+        when(apiBayClient.getHDMovies(anyString())).thenReturn(new APIBayClient.APIBayTorrent[]{
+                torrent("E", "Alien Covenant 2017 1080p", 10),
+                torrent("F", "Alien 1979 Directors Cut 1080p", 10),
+                torrent("G", "Aliens vs Predator 2004", 10_000)});
+
+        List<SearchHit> hits = search("alien covenant");
+
+        assertThat(hits).extracting(SearchHit::id).containsExactly("E", "F", "G");
+    }
+
+    @Test
+    void completesWhenSourcesFail() throws Exception {
+        when(ytsapiClient.ytsSearchV2(anyString())).thenThrow(new IllegalStateException("YTS is down"));
+        when(apiBayClient.getHDMovies(anyString())).thenReturn(new APIBayClient.APIBayTorrent[]{
+                torrent("H", "Heat 1995 1080p", 100)});
+
+        List<SearchResults> updates = new ArrayList<>();
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        federatedSearch.search("heat", results -> {
+            updates.add(results);
+            if (results.complete()) {
+                done.complete(null);
+            }
+        });
+        done.get(5, TimeUnit.SECONDS);
+
+        // one update per source, the last one complete
+        assertThat(updates).hasSize(5);
+        assertThat(updates.getLast().hits()).extracting(SearchHit::id).containsExactly("H");
+    }
+
+    private List<SearchHit> search(String term) throws Exception {
+        CompletableFuture<List<SearchHit>> complete = new CompletableFuture<>();
+        federatedSearch.search(term, results -> {
+            if (results.complete()) {
+                complete.complete(results.hits());
+            }
+        });
+        return complete.get(5, TimeUnit.SECONDS);
+    }
+
+    private static YTSAPIClient.YTSMoviesRecord yts(YTSAPIClient.YTSMovieDetails... movies) {
+        return new YTSAPIClient.YTSMoviesRecord("ok", "", new YTSAPIClient.YTSData(List.of(movies)));
+    }
+
+    private static YTSAPIClient.YTSMovieDetails movie(String id, String titleLong, String rating) {
+        return new YTSAPIClient.YTSMovieDetails(id, null, null, null, null, titleLong, null, rating, null,
+                new String[]{"Action"}, null, null, null, null, null, null, null, List.of());
+    }
+
+    private static APIBayClient.APIBayTorrent torrent(String infoHash, String name, long seeders) {
+        return new APIBayClient.APIBayTorrent("1", name, infoHash, "0", String.valueOf(seeders), "1",
+                String.valueOf(2L << 30), null, null, null, "207", null);
+    }
+
+    private static Video video(String name) {
+        Video video = new Video();
+        video.setMovieCode(name);
+        video.setName(name);
+        return video;
+    }
+}
@@ -0,0 +1,95 @@
+package com.brogrammer.streamspace.torrentengine;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class BencodeScannerTest {
+
+    @Test
+    void hashesTheInfoDictionary() {
+        byte[] pieces = new byte[20];
+        for (int i = 0; i < pieces.length; i++) {
+            pieces[i] = (byte) i;
+        }
+        ByteBuffer metainfo = bencode("d8:announce14:http://tracker4:info",
+                "d6:lengthi1024e4:name8:file.bin12:piece lengthi16384e6:pieces20:", pieces, "e",
+                "7:comment5:helloe");
+
+        // sha1sum of the info dictionary's bytes
+        assertThat(BencodeScanner.infoHash(metainfo)).isEqualTo("3EBFC305FA93471D9B10A13415D846520AF9F7C2");
+    }
+
+    @Test
+    void hashesNonCanonicalDictionariesAsTheyAre() {
+        // keys out of order, decoding and encoding again would sort them and change the hash
+        ByteBuffer metainfo = bencode("d4:infod4:name1:x6:lengthi1eee");
+
+        assertThat(BencodeScanner.infoHash(metainfo)).isEqualTo("128CC821621575F5FAAF184CDD70FD420802C670");
+    }
+
+    @Test
+    void skipsNestedValuesBeforeTheInfoDictionary() {
+        ByteBuffer metainfo = bencode("d13:announce-listll3:udpel4:httpee8:metadatad4:infoi1ee",
+                "4:infod5:filesld6:lengthi1e4:pathl1:aeed6:lengthi2e4:pathl1:b1:ceee4:name1:xee");
+
+        assertThat(text(BencodeScanner.infoDictionary(metainfo)))
+                .isEqualTo("d5:filesld6:lengthi1e4:pathl1:aeed6:lengthi2e4:pathl1:b1:ceee4:name1:xe");
+    }
+
+    @Test
+    void scansFromThePositionOfTheBuffer() {
+        ByteBuffer metainfo = bencode("garbaged4:infod4:name1:xee");
+        metainfo.position(7);
+
+        assertThat(text(BencodeScanner.infoDictionary(metainfo))).isEqualTo("d4:name1:xe");
+        assertThat(metainfo.position()).isEqualTo(7);
+    }
+
+    @Test
+    void rejectsTruncatedInput() {
+        assertInvalid("d4:infod4:name1:x", "truncated");
+        assertInvalid("d4:infod4:name5:x", "truncated");
+        assertInvalid("d4:infod6:lengthi12", "truncated");
+        assertInvalid("d4:info", "truncated");
+    }
+
+    @Test
+    void rejectsNegativeAndOversizedLengths() {
+        assertInvalid("d4:infod4:name-1:xee", "unexpected byte");
+        assertInvalid("d4:infod4:name99999999999999:xee", "bad string length");
+        assertInvalid("d4:infod4:name2147483647:xee", "truncated");
+    }
+
+    @Test
+    void rejectsWhatIsNotATorrent() {
+        assertInvalid("", "not a bencoded dictionary");
+        assertInvalid("l4:infoe", "not a bencoded dictionary");
+        assertInvalid("d8:announce3:urle", "no info dictionary");
+        assertInvalid("d4:infoi1ee", "info is not a dictionary");
+        assertInvalid("d4:info" + "l".repeat(100) + "e".repeat(100) + "e", "nesting too deep");
+    }
+
+    private static void assertInvalid(String metainfo, String reason) {
+        assertThatThrownBy(() -> BencodeScanner.infoHash(bencode(metainfo)))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining(reason);
+    }
+
+    private static ByteBuffer bencode(Object... parts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (Object part : parts) {
+            out.writeBytes(part instanceof byte[] bytes ? bytes : part.toString().getBytes(StandardCharsets.US_ASCII));
+        }
+        return ByteBuffer.wrap(out.toByteArray());
+    }
+
+    private static String text(ByteBuffer buffer) {
+        return StandardCharsets.US_ASCII.decode(buffer.duplicate()).toString();
+    }
+}
@@ -0,0 +1,121 @@
+package com.brogrammer.streamspace.torrentengine;
+
+import bt.Bt;
+import bt.data.file.FileSystemStorage;
+import bt.runtime.BtClient;
+import bt.runtime.BtRuntime;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.net.InetAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Finds the peers of a magnet-only torrent through a loopback DHT, once with an empty DHT node cache and
+ * once with the cache the first run left behind, and reports the time to first peer and to metadata of both.
+ * <p>
+ * The first DHT node of the {@link LocalSwarm} stands in for the public routers. Each run uses its own
+ * {@link TorrentRuntime}, as a restart of the application would.
+ * Excluded from the regular build, run it with {@code mvn test -Pbenchmark}. The number of DHT nodes and
+ * seeders can be changed with {@code -Dbenchmark.dht-nodes} and {@code -Dbenchmark.seeders}.
+ */
+@Slf4j
+@Tag("benchmark")
+class DhtBootstrapBenchmarkTest {
+
+    private static final long SIZE = Long.getLong("benchmark.size-mb", 4) * 1024 * 1024;
+    private static final int PIECE_LENGTH = Integer.getInteger("benchmark.piece-kb", 256) * 1024;
+    private static final int SEEDERS = Integer.getInteger("benchmark.seeders", 2);
+    private static final int DHT_NODES = Integer.getInteger("benchmark.dht-nodes", 8);
+    // time for the seeders to join the DHT and announce the torrent
+    private static final long SETTLE_SECONDS = Long.getLong("benchmark.dht-settle-seconds", 15);
+    private static final long TIMEOUT_SECONDS = Long.getLong("benchmark.timeout-seconds", 300);
+
+    @TempDir
+    Path workDirectory;
+
+    @Test
+    void timeToFirstPeerWithEmptyAndWarmNodeCache() throws Exception {
+        Path nodesFile = workDirectory.resolve("dht-nodes.txt");
+        try (LocalSwarm swarm = LocalSwarm.start(workDirectory, SIZE, PIECE_LENGTH, SEEDERS, DHT_NODES, 1)) {
+            TimeUnit.SECONDS.sleep(SETTLE_SECONDS);
+
+            Run cold = findPeers(swarm, nodesFile, workDirectory.resolve("cold"));
+            assertTrue(Files.isRegularFile(nodesFile), "The first run recorded no DHT nodes");
+            Run warm = findPeers(swarm, nodesFile, workDirectory.resolve("warm"));
+
+            log.info(String.format(Locale.ROOT,
+                    "[benchmark] DHT bootstrap: %d loopback nodes, %d seeders, "
+                            + "empty cache: first peer %d ms, metadata %d ms; "
+                            + "warm cache of %d nodes: first peer %d ms, metadata %d ms",
+                    swarm.dhtNodeCount(), SEEDERS,
+                    cold.firstPeerMillis(), cold.metadataMillis(),
+                    warm.cachedNodes(), warm.firstPeerMillis(), warm.metadataMillis()));
+        }
+    }
+
+    /**
+     * Starts the magnet on a fresh runtime that bootstraps from the router and the node cache, waits for the
+     * metadata and snapshots the cache, as a shutdown would.
+     */
+    private static Run findPeers(LocalSwarm swarm, Path nodesFile, Path targetDirectory) throws Exception {
+        DhtNodeCache dhtNodeCache = new DhtNodeCache(nodesFile.toString(), 512);
+        int cachedNodes = dhtNodeCache.bootstrapNodes().size();
+        TorrentRuntime torrentRuntime = new TorrentRuntime(InetAddress.getLoopbackAddress().getHostAddress(),
+                LocalSwarm.freePort(), LocalSwarm.freeDatagramPort(), true, true, swarm.dhtRouter(),
+                dhtNodeCache, new PeerBlocklist(""));
+        try {
+            BtRuntime runtime = torrentRuntime.runtime();
+            CountDownLatch fetched = new CountDownLatch(1);
+            AtomicLong firstPeerAt = new AtomicLong();
+            AtomicLong metadataAt = new AtomicLong();
+            runtime.getEventSource().onPeerConnected(event -> {
+                if (event.getTorrentId().toString().equalsIgnoreCase(swarm.torrentHash())) {
+                    firstPeerAt.compareAndSet(0, System.nanoTime());
+                }
+            });
+
+            BtClient client = Bt.client(runtime)
+                    .storage(new FileSystemStorage(Files.createDirectories(targetDirectory)))
+                    .magnet(swarm.magnetUri())
+                    .afterTorrentFetched(torrent -> {
+                        metadataAt.set(System.nanoTime());
+                        fetched.countDown();
+                    })
+                    .build();
+            long startedAt = System.nanoTime();
+            client.startAsync();
+            try {
+                assertTrue(fetched.await(TIMEOUT_SECONDS, TimeUnit.SECONDS),
+                        "No metadata through the DHT within " + TIMEOUT_SECONDS + " s");
+                // the seeders' PORT messages follow their handshakes
+                long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+                while (dhtNodeCache.bootstrapNodes().isEmpty() && System.nanoTime() < deadline) {
+                    TimeUnit.MILLISECONDS.sleep(100);
+                }
+                assertFalse(dhtNodeCache.bootstrapNodes().isEmpty(), "No PORT message received from the seeders");
+            } finally {
+                client.stop();
+            }
+            dhtNodeCache.snapshot();
+            return new Run(cachedNodes,
+                    TimeUnit.NANOSECONDS.toMillis(firstPeerAt.get() - startedAt),
+                    TimeUnit.NANOSECONDS.toMillis(metadataAt.get() - startedAt));
+        } finally {
+            torrentRuntime.shutdown();
+        }
+    }
+
+    private record Run(int cachedNodes, long firstPeerMillis, long metadataMillis) {
+    }
+}
@@ -0,0 +1,381 @@
+package com.brogrammer.streamspace.torrentengine;
+
+import bt.Bt;
+import bt.data.file.FileSystemStorage;
+import bt.dht.DHTConfig;
+import bt.dht.DHTModule;
+import bt.net.InetPeerAddress;
+import bt.protocol.crypto.EncryptionPolicy;
+import bt.runtime.BtClient;
+import bt.runtime.BtRuntime;
+import bt.runtime.BtRuntimeBuilder;
+import bt.runtime.Config;
+import bt.tracker.http.HttpTrackerModule;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A swarm that lives entirely on loopback: a synthetic single-file torrent, a minimal HTTP tracker
+ * and a number of Bt seeders, each with its own runtime and port. Nothing leaves the machine.
+ * <p>
+ * Optionally a small DHT runs next to it: a number of DHT-only nodes, each bootstrapping from the ones
+ * started before it, with the first one standing in for the public routers. The seeders then join it
+ * and announce the torrent, so that it can be found from its magnet URI alone.
+ */
+@Slf4j
+class LocalSwarm implements AutoCloseable {
+
+    private static final InetAddress LOOPBACK = InetAddress.getLoopbackAddress();
+
+    private final HttpServer tracker;
+    private final Set<Integer> announcedPorts = ConcurrentHashMap.newKeySet();
+    private final List<BtRuntime> runtimes = new ArrayList<>();
+    private final List<BtClient> seeders = new ArrayList<>();
+    private final List<Integer> dhtPorts = new ArrayList<>();
+    private final Path metainfoFile;
+    private final String torrentHash;
+    private final String fileName;
+    private final long size;
+    private final int pieceCount;
+
+    private LocalSwarm(Path workDirectory, long size, int pieceLength, long seed) throws IOException {
+        this.size = size;
+        this.pieceCount = (int) ((size + pieceLength - 1) / pieceLength);
+        this.fileName = "payload-" + Long.toHexString(seed) + ".bin";
+
+        tracker = HttpServer.create(new InetSocketAddress(LOOPBACK, 0), 0);
+        tracker.createContext("/announce", this::announce);
+        tracker.start();
+
+        Path seedDirectory = Files.createDirectories(workDirectory.resolve("seed"));
+        byte[] pieces = writePayload(seedDirectory.resolve(fileName), size, pieceLength, seed);
+
+        Map<String, Object> info = new TreeMap<>();
+        info.put("length", size);
+        info.put("name", fileName);
+        info.put("piece length", (long) pieceLength);
+        info.put("pieces", pieces);
+        byte[] infoBytes = bencode(info);
+
+        Map<String, Object> metainfo = new TreeMap<>();
+        metainfo.put("announce", "http://" + LOOPBACK.getHostAddress() + ":" + tracker.getAddress().getPort() + "/announce");
+        metainfo.put("info", infoBytes);
+        this.metainfoFile = workDirectory.resolve(fileName + ".torrent");
+        Files.write(metainfoFile, bencode(metainfo));
+        this.torrentHash = HexFormat.of().withUpperCase().formatHex(sha1().digest(infoBytes));
+    }
+
+    /**
+     * Generates the torrent and starts {@code seederCount} seeders, returning once every seeder
+     * has verified its data and can serve pieces.
+     */
+    static LocalSwarm start(Path workDirectory, long size, int pieceLength, int seederCount, long seed) throws Exception {
+        return start(workDirectory, size, pieceLength, seederCount, 0, seed);
+    }
+
+    /**
+     * Like {@link #start(Path, long, int, int, long)}, with {@code dhtNodeCount} loopback DHT nodes
+     * that the seeders join.
+     */
+    static LocalSwarm start(Path workDirectory, long size, int pieceLength, int seederCount, int dhtNodeCount, long seed) throws Exception {
+        LocalSwarm swarm = new LocalSwarm(workDirectory, size, pieceLength, seed);
+        try {
+            for (int i = 0; i < dhtNodeCount; i++) {
+                swarm.startDhtNode();
+            }
+            CountDownLatch ready = new CountDownLatch(seederCount);
+            for (int i = 0; i < seederCount; i++) {
+                swarm.startSeeder(workDirectory.resolve("seed"), ready);
+            }
+            if (!ready.await(5, TimeUnit.MINUTES)) {
+                throw new IllegalStateException("Seeders did not verify their data in time");
+            }
+        } catch (Exception e) {
+            swarm.close();
+            throw e;
+        }
+        return swarm;
+    }
+
+    Path metainfoFile() {
+        return metainfoFile;
+    }
+
+    String torrentHash() {
+        return torrentHash;
+    }
+
+    String fileName() {
+        return fileName;
+    }
+
+    long size() {
+        return size;
+    }
+
+    String magnetUri() {
+        return "magnet:?xt=urn:btih:" + torrentHash;
+    }
+
+    /**
+     * The first DHT node as {@code host:port}, the one the others bootstrapped from.
+     */
+    String dhtRouter() {
+        return LOOPBACK.getHostAddress() + ":" + dhtPorts.getFirst();
+    }
+
+    int dhtNodeCount() {
+        return dhtPorts.size();
+    }
+
+    int pieceCount() {
+        return pieceCount;
+    }
+
+    static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0, 0, LOOPBACK)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    static int freeDatagramPort() throws IOException {
+        try (DatagramSocket socket = new DatagramSocket(0, LOOPBACK)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private void startDhtNode() throws IOException {
+        int dhtPort = freeDatagramPort();
+        BtRuntime runtime = BtRuntime.builder(loopbackConfig(freePort()))
+                .module(dhtModule(dhtPort, dhtNodes()))
+                .disableAutomaticShutdown()
+                .build();
+        runtimes.add(runtime);
+        // there are no torrents to start it, the node has to be up for the ones after it
+        runtime.startup();
+        dhtPorts.add(dhtPort);
+    }
+
+    private void startSeeder(Path seedDirectory, CountDownLatch ready) throws IOException {
+        // modules are not auto-loaded, only the HTTP tracker client and the loopback DHT, if any, are wanted
+        BtRuntimeBuilder builder = BtRuntime.builder(loopbackConfig(freePort()))
+                .module(new HttpTrackerModule())
+                .disableAutomaticShutdown();
+        if (!dhtPorts.isEmpty()) {
+            builder.module(dhtModule(freeDatagramPort(), dhtNodes()));
+        }
+        BtRuntime runtime = builder.build();
+        runtimes.add(runtime);
+
+        BtClient client = Bt.client(runtime)
+                .storage(new FileSystemStorage(seedDirectory))
+                .torrent(metainfoFile.toUri().toURL())
+                .build();
+        seeders.add(client);
+
+        CountDownLatch verified = new CountDownLatch(1);
+        client.startAsync(state -> {
+            if (state.getPiecesTotal() > 0 && state.getPiecesComplete() == state.getPiecesTotal()
+                    && verified.getCount() > 0) {
+                verified.countDown();
+                ready.countDown();
+            }
+        }, 250);
+    }
+
+    private static Config loopbackConfig(int port) {
+        return new Config() {
+            @Override
+            public InetAddress getAcceptorAddress() {
+                return LOOPBACK;
+            }
+
+            @Override
+            public int getAcceptorPort() {
+                return port;
+            }
+
+            @Override
+            public EncryptionPolicy getEncryptionPolicy() {
+                return EncryptionPolicy.PREFER_ENCRYPTED;
+            }
+
+            @Override
+            public Duration getTrackerQueryInterval() {
+                return Duration.ofSeconds(5);
+            }
+        };
+    }
+
+    private List<InetPeerAddress> dhtNodes() {
+        return dhtPorts.stream().map(dhtPort -> new InetPeerAddress(LOOPBACK.getHostAddress(), dhtPort)).toList();
+    }
+
+    private static DHTModule dhtModule(int port, Collection<InetPeerAddress> bootstrapNodes) {
+        return new DHTModule(new DHTConfig() {
+            @Override
+            public int getListeningPort() {
+                return port;
+            }
+
+            @Override
+            public boolean shouldUseRouterBootstrap() {
+                // the first loopback node stands in for the routers
+                return false;
+            }
+
+            @Override
+            public Collection<InetPeerAddress> getBootstrapNodes() {
+                return bootstrapNodes;
+            }
+        });
+    }
+
+    private void announce(HttpExchange exchange) throws IOException {
+        Map<String, String> query = new TreeMap<>();
+        String rawQuery = exchange.getRequestURI().getRawQuery();
+        if (rawQuery != null) {
+            for (String parameter : rawQuery.split("&")) {
+                int separator = parameter.indexOf('=');
+                if (separator > 0) {
+                    query.put(parameter.substring(0, separator), parameter.substring(separator + 1));
+                }
+            }
+        }
+        Integer port = query.containsKey("port") ? Integer.valueOf(query.get("port")) : null;
+        if ("stopped".equals(query.get("event"))) {
+            announcedPorts.remove(port);
+        } else if (port != null) {
+            announcedPorts.add(port);
+        }
+
+        // compact peer list, all peers live on loopback
+        ByteArrayOutputStream peers = new ByteArrayOutputStream();
+        byte[] address = LOOPBACK.getAddress();
+        for (int peerPort : announcedPorts) {
+            if (port != null && peerPort == port) {
+                continue;
+            }
+            peers.write(address);
+            peers.write(peerPort >> 8);
+            peers.write(peerPort & 0xFF);
+        }
+        Map<String, Object> response = new TreeMap<>();
+        response.put("interval", 5L);
+        response.put("peers", peers.toByteArray());
+        byte[] body = bencode(response);
+
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    @Override
+    public void close() {
+        seeders.forEach(client -> {
+            try {
+                client.stop();
+            } catch (Exception e) {
+                log.debug("Failed to stop seeder", e);
+            }
+        });
+        runtimes.forEach(BtRuntime::shutdown);
+        tracker.stop(0);
+    }
+
+    /**
+     * Writes pseudo-random content and returns the concatenated SHA-1 of its pieces.
+     */
+    private static byte[] writePayload(Path file, long size, int pieceLength, long seed) throws IOException {
+        SplittableRandom random = new SplittableRandom(seed);
+        MessageDigest digest = sha1();
+        ByteArrayOutputStream pieces = new ByteArrayOutputStream();
+        byte[] piece = new byte[pieceLength];
+        try (OutputStream out = Files.newOutputStream(file)) {
+            for (long written = 0; written < size; written += pieceLength) {
+                int length = (int) Math.min(pieceLength, size - written);
+                for (int i = 0; i < length; i += 8) {
+                    long value = random.nextLong();
+                    for (int j = 0; j < 8 && i + j < length; j++) {
+                        piece[i + j] = (byte) (value >>> (j * 8));
+                    }
+                }
+                out.write(piece, 0, length);
+                digest.update(piece, 0, length);
+                pieces.write(digest.digest());
+            }
+        }
+        return pieces.toByteArray();
+    }
+
+    /**
+     * Bencodes strings, longs, byte arrays, lists and maps; a value of a map that is already
+     * bencoded (the info dictionary) is passed as {@code byte[]} under the "info" key and written verbatim.
+     */
+    private static byte[] bencode(Object value) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        bencode(value, out, false);
+        return out.toByteArray();
+    }
+
+    private static void bencode(Object value, ByteArrayOutputStream out, boolean raw) {
+        switch (value) {
+            case byte[] bytes when raw -> out.writeBytes(bytes);
+            case byte[] bytes -> {
+                out.writeBytes((bytes.length + ":").getBytes(StandardCharsets.US_ASCII));
+                out.writeBytes(bytes);
+            }
+            case String string -> bencode(string.getBytes(StandardCharsets.UTF_8), out, false);
+            case Long number -> out.writeBytes(("i" + number + "e").getBytes(StandardCharsets.US_ASCII));
+            case List<?> list -> {
+                out.write('l');
+                list.forEach(item -> bencode(item, out, false));
+                out.write('e');
+            }
+            case Map<?, ?> map -> {
+                out.write('d');
+                new TreeMap<>(map).forEach((key, item) -> {
+                    bencode(key, out, false);
+                    bencode(item, out, "info".equals(key));
+                });
+                out.write('e');
+            }
+            default -> throw new IllegalArgumentException("Cannot bencode " + value.getClass());
+        }
+    }
+
+    private static MessageDigest sha1() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
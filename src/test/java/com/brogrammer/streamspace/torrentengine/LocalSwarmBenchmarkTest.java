@@ -0,0 +1,136 @@
+package com.brogrammer.streamspace.torrentengine;
+
+import com.brogrammer.streamspace.common.CONTENTTYPE;
+import com.brogrammer.streamspace.common.DOWNLOADTYPE;
+import com.brogrammer.streamspace.downloads.DownloadTask;
+import com.brogrammer.streamspace.services.ContentDirectoryServices;
+import com.sun.management.OperatingSystemMXBean;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Downloads a synthetic torrent from an in-process loopback swarm through {@link TorrentDownloadManager}
+ * and reports throughput, time to first piece, time to complete, CPU time and thread counts.
+ * <p>
+ * Excluded from the regular build, run it with {@code mvn test -Pbenchmark}. Payload size, piece
+ * length and number of seeders can be changed with {@code -Dbenchmark.size-mb}, {@code -Dbenchmark.piece-kb}
+ * and {@code -Dbenchmark.seeders}. CPU time is that of the whole JVM, i.e. seeders included.
+ */
+@Slf4j
+@Tag("benchmark")
+@SpringBootTest
+class LocalSwarmBenchmarkTest {
+
+    private static final long SIZE = Long.getLong("benchmark.size-mb", 64) * 1024 * 1024;
+    private static final int PIECE_LENGTH = Integer.getInteger("benchmark.piece-kb", 256) * 1024;
+    private static final int SEEDERS = Integer.getInteger("benchmark.seeders", 4);
+    private static final long TIMEOUT_SECONDS = Long.getLong("benchmark.timeout-seconds", 600);
+    private static final Path WORK_DIRECTORY = createWorkDirectory();
+
+    @Autowired
+    TorrentDownloadManager torrentDownloadManager;
+
+    @Autowired
+    TorrentRuntime torrentRuntime;
+
+    @DynamicPropertySource
+    static void offlineProperties(DynamicPropertyRegistry registry) throws IOException {
+        registry.add("spring.datasource.url", () -> "jdbc:h2:mem:benchmark");
+        registry.add("torrent.metainfo.directory", () -> WORK_DIRECTORY.resolve("metainfo").toString());
+        registry.add("torrent.dht.nodes-file", () -> WORK_DIRECTORY.resolve("dht-nodes.txt").toString());
+        registry.add("torrent.dht.enabled", () -> "false");
+        registry.add("torrent.seeding.enabled", () -> "false");
+        // nothing may reach the network or the home directory
+        registry.add("catalog.warmup.enabled", () -> "false");
+        registry.add("upstream.snapshot.directory", () -> WORK_DIRECTORY.resolve("snapshots").toString());
+        registry.add("images.cache.directory", () -> WORK_DIRECTORY.resolve("images").toString());
+        int port = LocalSwarm.freePort();
+        registry.add("torrent.port", () -> port);
+    }
+
+    @ParameterizedTest
+    @EnumSource(DOWNLOADTYPE.class)
+    void downloadFromLocalSwarm(DOWNLOADTYPE downloadType) throws Exception {
+        Path runDirectory = Files.createDirectories(WORK_DIRECTORY.resolve(downloadType.name().toLowerCase(Locale.ROOT)));
+        Path targetDirectory = Files.createDirectories(runDirectory.resolve("download"));
+
+        try (LocalSwarm swarm = LocalSwarm.start(runDirectory, SIZE, PIECE_LENGTH, SEEDERS, downloadType.ordinal() + 1L)) {
+            CountDownLatch completed = new CountDownLatch(1);
+            Set<Integer> verifiedPieces = ConcurrentHashMap.newKeySet();
+            AtomicLong firstPieceAt = new AtomicLong();
+            torrentRuntime.runtime().getEventSource().onPieceVerified(event -> {
+                if (!event.getTorrentId().toString().equalsIgnoreCase(swarm.torrentHash())) {
+                    return;
+                }
+                firstPieceAt.compareAndSet(0, System.nanoTime());
+                if (verifiedPieces.add(event.getPieceIndex()) && verifiedPieces.size() == swarm.pieceCount()) {
+                    completed.countDown();
+                }
+            });
+
+            ContentDirectoryServices.mediaFolders.put(CONTENTTYPE.OTHER, targetDirectory.toString());
+            DownloadTask task = new DownloadTask(swarm.torrentHash(), swarm.fileName(), swarm.torrentHash(), CONTENTTYPE.OTHER);
+            task.setDownloadType(downloadType);
+            task.setMetaInfoFile(swarm.metainfoFile().toFile());
+
+            ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+            OperatingSystemMXBean os = (OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+            threads.resetPeakThreadCount();
+            int threadsBefore = threads.getThreadCount();
+            long cpuBefore = os.getProcessCpuTime();
+            long startedAt = System.nanoTime();
+
+            torrentDownloadManager.startDownload(task);
+            boolean done = completed.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+            long elapsedNanos = System.nanoTime() - startedAt;
+            long cpuNanos = os.getProcessCpuTime() - cpuBefore;
+            int threadsAfter = threads.getThreadCount();
+            int peakThreads = threads.getPeakThreadCount();
+
+            assertTrue(done, "Download did not complete within " + TIMEOUT_SECONDS + " s, verified "
+                    + verifiedPieces.size() + "/" + swarm.pieceCount() + " pieces");
+            assertEquals(swarm.size(), Files.size(targetDirectory.resolve(swarm.fileName())));
+
+            double seconds = elapsedNanos / 1e9;
+            log.info(String.format(Locale.ROOT,
+                    "[benchmark] %s: %d MB from %d seeders, %.2f MB/s, first piece %d ms, complete %d ms, "
+                            + "CPU %d ms, threads %d -> %d (peak %d)",
+                    downloadType, SIZE >> 20, SEEDERS, (SIZE / 1048576d) / seconds,
+                    TimeUnit.NANOSECONDS.toMillis(firstPieceAt.get() - startedAt),
+                    TimeUnit.NANOSECONDS.toMillis(elapsedNanos),
+                    TimeUnit.NANOSECONDS.toMillis(cpuNanos),
+                    threadsBefore, threadsAfter, peakThreads));
+        }
+    }
+
+    private static Path createWorkDirectory() {
+        try {
+            return Files.createTempDirectory("streamspace-benchmark");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
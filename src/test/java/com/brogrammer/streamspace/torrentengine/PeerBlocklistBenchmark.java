@@ -0,0 +1,86 @@
+package com.brogrammer.streamspace.torrentengine;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.BufferedWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lookup cost of {@link PeerBlocklist} against a synthetic list of the size of the public ones.
+ * Run with {@code mvn test -Pbenchmark -Dtest=PeerBlocklistBenchmark}.
+ */
+@Tag("benchmark")
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PeerBlocklistBenchmark {
+
+    private static final int ADDRESSES = 1 << 16;
+
+    @Param({"10000", "400000"})
+    int ranges;
+
+    PeerBlocklist blocklist;
+    int[] addresses;
+    int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        SplittableRandom random = new SplittableRandom(42);
+        Path file = Files.createTempFile("blocklist", ".p2p");
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.ISO_8859_1)) {
+            for (int i = 0; i < ranges; i++) {
+                long start = random.nextLong(0x1_0000_0000L - 4096);
+                long end = start + random.nextInt(4096);
+                writer.write("range " + i + ":" + dotted(start) + "-" + dotted(end));
+                writer.newLine();
+            }
+        }
+        blocklist = new PeerBlocklist(file.toString());
+        Files.delete(file);
+
+        addresses = new int[ADDRESSES];
+        for (int i = 0; i < ADDRESSES; i++) {
+            addresses[i] = random.nextInt();
+        }
+    }
+
+    @Benchmark
+    public boolean lookup() {
+        return blocklist.isBlocked(addresses[next++ & (ADDRESSES - 1)]);
+    }
+
+    @Test
+    void run() throws Exception {
+        new Runner(new OptionsBuilder()
+                .include(PeerBlocklistBenchmark.class.getSimpleName())
+                .build())
+                .run();
+    }
+
+    private static String dotted(long address) {
+        return (address >> 24 & 0xFF) + "." + (address >> 16 & 0xFF) + "." + (address >> 8 & 0xFF) + "." + (address & 0xFF);
+    }
+}
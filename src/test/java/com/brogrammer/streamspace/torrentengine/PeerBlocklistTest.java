@@ -0,0 +1,149 @@
+package com.brogrammer.streamspace.torrentengine;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PeerBlocklistTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void mergesOverlappingAndAdjacentRanges() throws IOException {
+        PeerBlocklist blocklist = blocklist(
+                "first:1.2.3.0-1.2.3.100",
+                "second:1.2.3.50-1.2.3.200",
+                "1.2.3.201-1.2.3.255",
+                "1.2.3.10");
+
+        assertThat(blocklist.size()).isEqualTo(1);
+        assertThat(blocklist.isBlocked(ip("1.2.3.0"))).isTrue();
+        assertThat(blocklist.isBlocked(ip("1.2.3.150"))).isTrue();
+        assertThat(blocklist.isBlocked(ip("1.2.3.255"))).isTrue();
+        assertThat(blocklist.isBlocked(ip("1.2.2.255"))).isFalse();
+        assertThat(blocklist.isBlocked(ip("1.2.4.0"))).isFalse();
+    }
+
+    @Test
+    void keepsSeparateRangesApart() throws IOException {
+        PeerBlocklist blocklist = blocklist("1.0.0.0-1.0.0.9", "1.0.0.11-1.0.0.20");
+
+        assertThat(blocklist.size()).isEqualTo(2);
+        assertThat(blocklist.isBlocked(ip("1.0.0.9"))).isTrue();
+        assertThat(blocklist.isBlocked(ip("1.0.0.10"))).isFalse();
+        assertThat(blocklist.isBlocked(ip("1.0.0.11"))).isTrue();
+    }
+
+    @Test
+    void readsCidrBlocks() throws IOException {
+        // host bits of the address are ignored
+        PeerBlocklist blocklist = blocklist("10.1.2.3/8", "192.168.1.7/32");
+
+        assertThat(blocklist.isBlocked(ip("10.0.0.0"))).isTrue();
+        assertThat(blocklist.isBlocked(ip("10.255.255.255"))).isTrue();
+        assertThat(blocklist.isBlocked(ip("11.0.0.0"))).isFalse();
+        assertThat(blocklist.isBlocked(ip("192.168.1.7"))).isTrue();
+        assertThat(blocklist.isBlocked(ip("192.168.1.8"))).isFalse();
+    }
+
+    @Test
+    void blocksTheBoundaryAddresses() throws IOException {
+        PeerBlocklist blocklist = blocklist("0.0.0.0", "255.255.255.255", "127.255.255.0-128.0.0.255");
+
+        assertThat(blocklist.isBlocked(ip("0.0.0.0"))).isTrue();
+        assertThat(blocklist.isBlocked(ip("0.0.0.1"))).isFalse();
+        assertThat(blocklist.isBlocked(ip("255.255.255.255"))).isTrue();
+        assertThat(blocklist.isBlocked(ip("255.255.255.254"))).isFalse();
+        // the range across the sign bit of the int representation
+        assertThat(blocklist.isBlocked(ip("127.255.255.255"))).isTrue();
+        assertThat(blocklist.isBlocked(ip("128.0.0.0"))).isTrue();
+        assertThat(blocklist.isBlocked(ip("127.255.254.255"))).isFalse();
+        assertThat(blocklist.isBlocked(ip("128.0.1.0"))).isFalse();
+    }
+
+    @Test
+    void skipsMalformedLines() throws IOException {
+        PeerBlocklist blocklist = blocklist(
+                "# comment",
+                "",
+                "garbage",
+                "bad:1.2.3",
+                "1.2.3.256",
+                "1.2.3.4.5",
+                "1.2.3.-1",
+                "reversed:1.2.3.9-1.2.3.1",
+                "1.2.3.0/33",
+                "example.com",
+                "good:5.6.7.8");
+
+        assertThat(blocklist.size()).isEqualTo(1);
+        assertThat(blocklist.isBlocked(ip("5.6.7.8"))).isTrue();
+        assertThat(blocklist.isBlocked(ip("1.2.3.4"))).isFalse();
+    }
+
+    @Test
+    void checksOnlyIpv4Addresses() throws IOException {
+        PeerBlocklist blocklist = blocklist("0.0.0.0-255.255.255.255");
+
+        assertThat(blocklist.isBlocked(InetAddress.getByName("1.2.3.4"))).isTrue();
+        assertThat(blocklist.isBlocked(InetAddress.getByName("::1"))).isFalse();
+    }
+
+    @Test
+    void reloadsWhenTheFileChanges() throws IOException {
+        Path file = directory.resolve("blocklist.p2p");
+        write(file, Instant.parse("2026-01-01T00:00:00Z"), "1.1.1.1");
+        PeerBlocklist blocklist = new PeerBlocklist(file.toString());
+
+        // same modification time, not read again
+        write(file, Instant.parse("2026-01-01T00:00:00Z"), "2.2.2.2");
+        blocklist.reload();
+        assertThat(blocklist.isBlocked(ip("1.1.1.1"))).isTrue();
+
+        write(file, Instant.parse("2026-01-02T00:00:00Z"), "2.2.2.2");
+        blocklist.reload();
+        assertThat(blocklist.isBlocked(ip("1.1.1.1"))).isFalse();
+        assertThat(blocklist.isBlocked(ip("2.2.2.2"))).isTrue();
+
+        // a deleted file keeps the loaded ranges
+        Files.delete(file);
+        blocklist.reload();
+        assertThat(blocklist.isBlocked(ip("2.2.2.2"))).isTrue();
+    }
+
+    @Test
+    void blocksNothingWithoutAFile() {
+        assertThat(new PeerBlocklist("").isBlocked(ip("1.2.3.4"))).isFalse();
+        assertThat(new PeerBlocklist(directory.resolve("missing.p2p").toString()).size()).isZero();
+    }
+
+    private PeerBlocklist blocklist(String... lines) throws IOException {
+        Path file = directory.resolve("blocklist.p2p");
+        Files.write(file, List.of(lines));
+        return new PeerBlocklist(file.toString());
+    }
+
+    private static void write(Path file, Instant modified, String... lines) throws IOException {
+        Files.write(file, List.of(lines));
+        Files.setLastModifiedTime(file, FileTime.from(modified));
+    }
+
+    private static int ip(String address) {
+        try {
+            return PeerBlocklist.toInt(InetAddress.getByName(address).getAddress());
+        } catch (UnknownHostException e) {
+            throw new IllegalArgumentException(address, e);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.brogrammer.streamspace.torrentengine;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.HexFormat;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of one broadcast tick for a page with 30 downloads: the former HTML fragments formatted with
+ * {@code String.format} against the JSON deltas of {@link ProgressFrameEncoder}.
+ * {@code bytes} reports the payload per tick, the GC profiler the allocations per tick ({@code gc.alloc.rate.norm}).
+ * Run with {@code mvn test -Pbenchmark -Dtest=ProgressFrameBenchmark}.
+ */
+@Tag("benchmark")
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProgressFrameBenchmark {
+
+    private static final int TORRENTS = 30;
+    private static final String RATE_FORMAT = "%4.1f %s/s";
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Payload {
+        public long bytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            bytes = 0;
+        }
+    }
+
+    String[] hashes;
+    ProgressSnapshot[] previous;
+    ProgressSnapshot[] current;
+    ProgressFrameEncoder encoder;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        SplittableRandom random = new SplittableRandom(42);
+        hashes = new String[TORRENTS];
+        previous = new ProgressSnapshot[TORRENTS];
+        current = new ProgressSnapshot[TORRENTS];
+        for (int i = 0; i < TORRENTS; i++) {
+            byte[] hash = new byte[20];
+            random.nextBytes(hash);
+            hashes[i] = HexFormat.of().withUpperCase().formatHex(hash);
+            int progress = random.nextInt(9000);
+            long down = random.nextLong(4 << 20);
+            previous[i] = new ProgressSnapshot(hashes[i], progress, down, random.nextLong(1 << 20),
+                    random.nextInt(50), random.nextLong(7200), false);
+            // a typical tick: progress, rate and ETA move, peers and upload mostly do not
+            current[i] = new ProgressSnapshot(hashes[i], progress + random.nextInt(30), down + random.nextLong(65536),
+                    previous[i].upRate(), previous[i].peerCount(), previous[i].etaSeconds() - 1, false);
+        }
+        encoder = new ProgressFrameEncoder();
+    }
+
+    @Benchmark
+    public void html(Payload payload, Blackhole blackhole) {
+        for (ProgressSnapshot snapshot : current) {
+            String frame = legacyRender(snapshot.torrentHash(),
+                    String.format("%.2f%%", snapshot.progress() / 100.0),
+                    formatRate(snapshot.downRate()),
+                    formatRate(snapshot.upRate()),
+                    snapshot.peerCount(),
+                    String.format("%s", formatEta(snapshot.etaSeconds())));
+            payload.bytes += frame.length();
+            blackhole.consume(frame);
+        }
+    }
+
+    @Benchmark
+    public void jsonDelta(Payload payload, Blackhole blackhole) {
+        for (int i = 0; i < TORRENTS; i++) {
+            String frame = encoder.encode(current[i], previous[i]);
+            if (frame != null) {
+                payload.bytes += frame.length();
+            }
+            blackhole.consume(frame);
+        }
+    }
+
+    @Test
+    void run() throws Exception {
+        new Runner(new OptionsBuilder()
+                .include(ProgressFrameBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build())
+                .run();
+    }
+
+    private static String formatRate(long bytes) {
+        if (bytes < 1024) {
+            return String.format(RATE_FORMAT, (double) bytes, "B");
+        }
+        if (bytes < 1024 * 1024) {
+            return String.format(RATE_FORMAT, bytes / 1024.0, "KB");
+        }
+        return String.format(RATE_FORMAT, bytes / (1024.0 * 1024), "MB");
+    }
+
+    private static String formatEta(long seconds) {
+        return String.format("%d:%02d:%02d", seconds / 3600, seconds % 3600 / 60, seconds % 60);
+    }
+
+    // The frame DownloadProgressHandler sent per torrent and tick before the delta protocol
+    private static String legacyRender(String torrentId, String message, String downRate, String upRate, int peerCount, String remainingTime) {
+        return "<div id=\"progress-bar-" + torrentId + "\" class=\"progress progress-bar\" role=\"progressbar\" hx-swap-oob=\"true\" style=\"width: " + message + ";height:5px;\" aria-valuenow=\"" + message + "\" aria-valuemin=\"0\" aria-valuemax=\"100\"></div><div id=\"torrent-stats-" + torrentId + "\" class=\"container\"> <div class=\"row\"> <div class=\"col\"> <p class=\"text-body-secondary\">" + message + "</p></div> <div class=\"col\"> <p class=\"text-body-secondary\"><i class=\"bi bi-arrow-down\"></i> " + downRate + "</p> </div> <div class=\"col\"> <p class=\"text-body-secondary\"><i class=\"bi bi-arrow-up\"></i> " + upRate + "</p> </div> <div class=\"col\"> <p class=\"text-body-secondary\">" + peerCount + "P</p> </div> <div class=\"col\"> <p class=\"text-body-secondary\">ETA " + remainingTime + "</p> </div> </div> </div>";
+    }
+}
@@ -0,0 +1,114 @@
+package com.brogrammer.streamspace.torrentengine;
+
+import org.junit.jupiter.api.Test;
+import tools.jackson.databind.JsonNode;
+import tools.jackson.databind.ObjectMapper;
+
+import java.util.SplittableRandom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ProgressFrameEncoderTest {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final String HASH = "0123456789ABCDEF0123456789ABCDEF01234567";
+
+    private final ProgressFrameEncoder encoder = new ProgressFrameEncoder();
+
+    @Test
+    void keyframeCarriesEveryField() {
+        ProgressSnapshot snapshot = new ProgressSnapshot(HASH, 4512, 1_048_576, 2048, 12, 95, false);
+
+        String frame = encoder.encode(snapshot, null);
+
+        assertThat(frame).isEqualTo("{\"h\":\"" + HASH + "\",\"k\":1,\"p\":4512,\"d\":1048576,\"u\":2048,\"n\":12,\"e\":95}");
+        assertThat(decode(frame, null)).isEqualTo(snapshot);
+    }
+
+    @Test
+    void deltaCarriesOnlyChangedFields() {
+        ProgressSnapshot previous = new ProgressSnapshot(HASH, 4512, 1_048_576, 2048, 12, 95, false);
+        ProgressSnapshot current = new ProgressSnapshot(HASH, 4600, 1_048_576, 2048, 13, 95, false);
+
+        assertThat(encoder.encode(current, previous)).isEqualTo("{\"h\":\"" + HASH + "\",\"p\":4600,\"n\":13}");
+    }
+
+    @Test
+    void unchangedProgressHasNoFrame() {
+        ProgressSnapshot snapshot = new ProgressSnapshot(HASH, 10_000, 0, 512, 3, -1, false);
+
+        assertThat(encoder.encode(snapshot, snapshot)).isNull();
+    }
+
+    @Test
+    void completeIsSentWithEveryFrame() {
+        ProgressSnapshot complete = new ProgressSnapshot(HASH, 10_000, 0, 512, 3, 0, true);
+
+        assertThat(encoder.encode(complete, complete)).isEqualTo("{\"h\":\"" + HASH + "\",\"c\":1}");
+    }
+
+    @Test
+    void framesDecodeBackToTheSnapshots() {
+        SplittableRandom random = new SplittableRandom(42);
+        ProgressSnapshot previous = null;
+        ProgressSnapshot decoded = null;
+        for (int tick = 0; tick < 1000; tick++) {
+            ProgressSnapshot current = previous == null || random.nextInt(4) == 0
+                    ? randomSnapshot(random)
+                    : change(previous, random);
+            // a keyframe now and then, as after a resubscribe
+            ProgressSnapshot base = tick % 100 == 0 ? null : previous;
+
+            String frame = encoder.encode(current, base);
+            if (frame != null) {
+                decoded = decode(frame, base == null ? null : decoded);
+            }
+
+            assertThat(decoded).isEqualTo(current);
+            previous = current;
+        }
+    }
+
+    /**
+     * Applies a frame to the snapshot decoded from the previous frames, like the downloads page does.
+     */
+    private static ProgressSnapshot decode(String frame, ProgressSnapshot previous) {
+        JsonNode node = OBJECT_MAPPER.readTree(frame);
+        if (node.has("k")) {
+            previous = null;
+        }
+        return new ProgressSnapshot(
+                node.get("h").asString(),
+                node.has("p") ? node.get("p").asInt() : previous.progress(),
+                node.has("d") ? node.get("d").asLong() : previous.downRate(),
+                node.has("u") ? node.get("u").asLong() : previous.upRate(),
+                node.has("n") ? node.get("n").asInt() : previous.peerCount(),
+                node.has("e") ? node.get("e").asLong() : previous.etaSeconds(),
+                node.has("c"));
+    }
+
+    private static ProgressSnapshot randomSnapshot(SplittableRandom random) {
+        return new ProgressSnapshot(HASH, random.nextInt(10_001), random.nextLong(50_000_000), random.nextLong(5_000_000),
+                random.nextInt(200), random.nextLong(-1, 100_000), random.nextInt(10) == 0);
+    }
+
+    // one field changes at a time, most ticks change few fields
+    private static ProgressSnapshot change(ProgressSnapshot snapshot, SplittableRandom random) {
+        return switch (random.nextInt(7)) {
+            case 0 -> new ProgressSnapshot(HASH, random.nextInt(10_001), snapshot.downRate(), snapshot.upRate(),
+                    snapshot.peerCount(), snapshot.etaSeconds(), snapshot.complete());
+            case 1 -> new ProgressSnapshot(HASH, snapshot.progress(), random.nextLong(50_000_000), snapshot.upRate(),
+                    snapshot.peerCount(), snapshot.etaSeconds(), snapshot.complete());
+            case 2 -> new ProgressSnapshot(HASH, snapshot.progress(), snapshot.downRate(), random.nextLong(5_000_000),
+                    snapshot.peerCount(), snapshot.etaSeconds(), snapshot.complete());
+            case 3 -> new ProgressSnapshot(HASH, snapshot.progress(), snapshot.downRate(), snapshot.upRate(),
+                    random.nextInt(200), snapshot.etaSeconds(), snapshot.complete());
+            case 4 -> new ProgressSnapshot(HASH, snapshot.progress(), snapshot.downRate(), snapshot.upRate(),
+                    snapshot.peerCount(), random.nextLong(-1, 100_000), snapshot.complete());
+            // a torrent does not become incomplete again
+            case 5 -> new ProgressSnapshot(HASH, snapshot.progress(), snapshot.downRate(), snapshot.upRate(),
+                    snapshot.peerCount(), snapshot.etaSeconds(), true);
+            default -> snapshot;
+        };
+    }
+}
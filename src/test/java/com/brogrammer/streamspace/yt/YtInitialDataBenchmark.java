@@ -0,0 +1,112 @@
+package com.brogrammer.streamspace.yt;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import tools.jackson.databind.JsonNode;
+import tools.jackson.databind.ObjectMapper;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Cost of reading the videos of one search results page: the former whole-page regex and JSON tree against
+ * the streaming scan of {@link YtInitialDataParser}.
+ * <p>
+ * The page is the saved fixture {@code yt/search-results.html} with 768 KB more of leading scripts, about the
+ * size of a real one. The GC profiler reports the allocations per page ({@code gc.alloc.rate.norm}).
+ * Run with {@code mvn test -Pbenchmark -Dtest=YtInitialDataBenchmark}.
+ */
+@Tag("benchmark")
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class YtInitialDataBenchmark {
+
+    private static final int LEADING_SCRIPT_BYTES = 768 * 1024;
+    private static final Pattern POLYMER_INITIAL_DATA_REGEX = Pattern.compile("(window\\[\"ytInitialData\"]|var ytInitialData)\\s*=\\s*(.*);");
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    byte[] page;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        byte[] fixture;
+        try (InputStream in = YtInitialDataBenchmark.class.getResourceAsStream("/yt/search-results.html")) {
+            fixture = in.readAllBytes();
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(fixture.length + LEADING_SCRIPT_BYTES + 64);
+        out.write("<script>var ytcfg = \"".getBytes(StandardCharsets.UTF_8));
+        out.write("x".repeat(LEADING_SCRIPT_BYTES).getBytes(StandardCharsets.UTF_8));
+        out.write("\";</script>\n".getBytes(StandardCharsets.UTF_8));
+        out.write(fixture);
+        page = out.toByteArray();
+
+        List<YouTubeResponseDTO> regex = regexAndTree();
+        List<YouTubeResponseDTO> streaming = streaming();
+        if (regex.isEmpty() || !regex.equals(streaming)) {
+            throw new IllegalStateException("Parsers disagree on the fixture: " + regex + " vs " + streaming);
+        }
+    }
+
+    @Benchmark
+    public List<YouTubeResponseDTO> regexAndTree() {
+        String html = new String(page, StandardCharsets.UTF_8);
+        Matcher matcher = POLYMER_INITIAL_DATA_REGEX.matcher(html);
+        if (!matcher.find()) {
+            throw new IllegalStateException("Failed to match ytInitialData JSON object");
+        }
+        JsonNode items = OBJECT_MAPPER.readTree(matcher.group(2))
+                .path("contents").path("twoColumnSearchResultsRenderer").path("primaryContents")
+                .path("sectionListRenderer").path("contents").path(0).path("itemSectionRenderer").path("contents");
+        List<YouTubeResponseDTO> videos = new ArrayList<>();
+        for (JsonNode item : items) {
+            JsonNode video = item.path("videoRenderer");
+            if (!video.isMissingNode()) {
+                videos.add(new YouTubeResponseDTO(
+                        video.path("title").path("runs").path(0).path("text").asString(),
+                        video.path("videoId").asString(),
+                        video.path("thumbnail").path("thumbnails").path(0).path("url").asString()));
+            }
+        }
+        return videos;
+    }
+
+    @Benchmark
+    public List<YouTubeResponseDTO> streaming() throws IOException {
+        return YtInitialDataParser.searchResults(new ByteArrayInputStream(page));
+    }
+
+    @Test
+    void run() throws Exception {
+        new Runner(new OptionsBuilder()
+                .include(YtInitialDataBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build())
+                .run();
+    }
+}
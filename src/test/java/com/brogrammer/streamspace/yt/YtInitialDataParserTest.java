@@ -0,0 +1,73 @@
+package com.brogrammer.streamspace.yt;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class YtInitialDataParserTest {
+
+    private static final String SECTION_LIST = """
+            {"contents":{"twoColumnSearchResultsRenderer":{"primaryContents":{"sectionListRenderer":{"contents":[
+              {"itemSectionRenderer":{"contents":[
+                {"videoRenderer":{"videoId":"abc","title":{"runs":[{"text":"Über {trailer}"}]},
+                                  "thumbnail":{"thumbnails":[{"url":"https://i.ytimg.com/vi/abc/hq720.jpg"}]}}}
+              ]}}
+            ]}}}}}""";
+
+    @Test
+    void readsTheVideosOfTheFirstItemSection() throws IOException {
+        List<YouTubeResponseDTO> videos;
+        try (InputStream page = getClass().getResourceAsStream("/yt/search-results.html")) {
+            videos = YtInitialDataParser.searchResults(page);
+        }
+
+        // the channel, shelf and ad items of the section are skipped
+        assertThat(videos).hasSize(20);
+        assertThat(videos.getFirst()).isEqualTo(new YouTubeResponseDTO("Fixture Movie (2000) Official Trailer #1", "PtYgjmUhBel",
+                "https://i.ytimg.com/vi/PtYgjmUhBel/hq720.jpg?sqp=-oaymwEcCNAFEJQDSFXyq4qpAw4IARUAAIhCGAFwAcABBg=="));
+        assertThat(videos.getLast().url()).isEqualTo("j12b10TE0wb");
+    }
+
+    @Test
+    void readsAWindowAssignment() throws IOException {
+        List<YouTubeResponseDTO> videos = parse("<script>window[\"ytInitialData\"] = " + SECTION_LIST + ";</script>");
+
+        assertThat(videos).containsExactly(new YouTubeResponseDTO("Über {trailer}", "abc", "https://i.ytimg.com/vi/abc/hq720.jpg"));
+    }
+
+    @Test
+    void skipsMentionsThatAreNotTheAssignment() throws IOException {
+        List<YouTubeResponseDTO> videos = parse("<script>if (window.ytInitialData) {}</script>"
+                + "<script>var ytInitialData = " + SECTION_LIST + ";</script>");
+
+        assertThat(videos).extracting(YouTubeResponseDTO::url).containsExactly("abc");
+    }
+
+    @Test
+    void failsWithoutInitialData() {
+        assertThatThrownBy(() -> parse("<html><script>var ytcfg = {};</script></html>"))
+                .isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void answersNothingForAnotherLayout() throws IOException {
+        assertThat(parse("<script>var ytInitialData = {\"contents\":{\"singleColumnBrowseResultsRenderer\":{}}};</script>")).isEmpty();
+    }
+
+    @Test
+    void normalizesQueriesForTheCache() {
+        assertThat(YoutubeCrawler.normalize("  Amélie: LE Fabuleux!! ")).isEqualTo("amélie le fabuleux");
+        assertThat(YoutubeCrawler.normalize("ＤＵＮＥ")).isEqualTo("dune");
+    }
+
+    private static List<YouTubeResponseDTO> parse(String page) throws IOException {
+        return YtInitialDataParser.searchResults(new ByteArrayInputStream(page.getBytes(StandardCharsets.UTF_8)));
+    }
+}